@@ -0,0 +1,209 @@
+package edu.nyu.oop.bench;
+
+import edu.nyu.oop.*;
+import edu.nyu.oop.util.AstDiskCache;
+import edu.nyu.oop.util.IndexedSymbolTable;
+import edu.nyu.oop.util.JavaFiveImportParser;
+import edu.nyu.oop.util.NodeUtil;
+import edu.nyu.oop.util.ParseCache;
+import edu.nyu.oop.util.SymbolTableBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import xtc.tree.GNode;
+import xtc.tree.Node;
+import xtc.util.Runtime;
+import xtc.util.SymbolTable;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the translator's stages, each measured in isolation on inputs from src/test/java/inputs.
+ * The multifile input is a package of several sources, so that the stages also handle imported sources.
+ * Every stage is fed with the artifacts of the stages before it, prepared outside of the measurement by a
+ * Translator. The stages that rewrite their input AST in place get fresh artifacts for every invocation;
+ * those copies are made through the parse cache, so their setup does not pay for parsing again.
+ * <p>
+ * Must run from the project root, like the translator itself, since inputs and their imports are resolved
+ * against the working directory. See the README for the sbt commands running them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    /**
+     * The input being translated. Parsing is left uncached, in memory and on disk, so that the parsing
+     * benchmarks measure the parser.
+     */
+    @State(Scope.Thread)
+    public static class Input {
+        @Param({"test001", "test012", "test025", "test", "multifile"})
+        public String name;
+
+        File source;
+        Runtime runtime;
+        GNode root;
+
+        @Setup(Level.Trial)
+        public void loadInput() {
+            source = new File("src/test/java/inputs/" + name + "/"
+                    + Character.toUpperCase(name.charAt(0)) + name.substring(1) + ".java");
+            if (!source.isFile())
+                throw new IllegalStateException("Input " + source + " not found, run from the project root.");
+            ParseCache.disable();
+            AstDiskCache.disable();
+            runtime = BatchTranslator.newRuntime(Collections.<File>emptyList());
+            root = (GNode) NodeUtil.parseJavaFile(source);
+        }
+
+        // a translator over a fresh copy of the input's AST
+        Translator translator() {
+            ParseCache.enable();
+            return new Translator(runtime, NodeUtil.parseJavaFile(source), "output");
+        }
+    }
+
+    public static class ParsedAsts extends Input {
+        List<Node> javaAstList;
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            javaAstList = translator().getJavaAstList();
+        }
+    }
+
+    public static class SymbolTables extends Input {
+        List<Node> javaAstList;
+        SymbolTable table;
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            javaAstList = translator().getJavaAstList();
+            table = buildTable(runtime, javaAstList);
+        }
+    }
+
+    public static class MutatedJavaAsts extends Input {
+        List<Node> javaAstList;
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            javaAstList = translator().getMutatedJavaAstList();
+        }
+    }
+
+    public static class ClassTrees extends Input {
+        List<Node> javaAstList;
+        ClassHierarchy classHierarchy;
+        List<String> packageInfo;
+        Set<String> conflictMethodNames;
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            javaAstList = translator().getMutatedJavaAstList();
+            ClassTreeVisitor classTreeVisitor = new ClassTreeVisitor();
+            classHierarchy = new ClassHierarchy(classTreeVisitor.getClassTree(javaAstList));
+            packageInfo = classTreeVisitor.getPackageInfo();
+            conflictMethodNames = classTreeVisitor.getConflictMethodNames();
+            new HeaderAstBuilder(classHierarchy, packageInfo).buildHeaderAst();
+        }
+    }
+
+    // building the header AST leaves the class tree as it is, so it is only prepared once
+    public static class HeaderInputs extends Input {
+        Map<String, ClassSignature> classTreeMap;
+        ClassHierarchy classHierarchy;
+        List<String> packageInfo;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+            ClassTreeVisitor classTreeVisitor = new ClassTreeVisitor();
+            classTreeMap = classTreeVisitor.getClassTree(translator().getMutatedJavaAstList());
+            classHierarchy = new ClassHierarchy(classTreeMap);
+            packageInfo = classTreeVisitor.getPackageInfo();
+        }
+    }
+
+    // printing leaves the C++ ASTs as they are, so they are only prepared once
+    public static class CppAsts extends Input {
+        Node headerAst;
+        Node mutatedCppAst;
+        Node mainAst;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+            Translator translator = translator();
+            headerAst = translator.getHeaderAst();
+            mutatedCppAst = translator.getMutatedCppAst();
+            mainAst = translator.getMainAst();
+        }
+    }
+
+    // builds the symbol table like Translator does, in dependency order of the sources
+    static SymbolTable buildTable(Runtime runtime, List<Node> javaAstList) {
+        SymbolTable table = new IndexedSymbolTable();
+        for (Node n : new DependencyScheduler(javaAstList).getOrder())
+            table = new SymbolTableBuilder(runtime, table).getTable(n);
+        return table;
+    }
+
+    @Benchmark
+    public Node parseJavaFile(Input input) {
+        return NodeUtil.parseJavaFile(input.source);
+    }
+
+    @Benchmark
+    public List<GNode> parseImports(Input input) {
+        return new JavaFiveImportParser().parse(input.root);
+    }
+
+    @Benchmark
+    public SymbolTable buildSymbolTable(ParsedAsts asts) {
+        return buildTable(asts.runtime, asts.javaAstList);
+    }
+
+    @Benchmark
+    public List<Node> mutateContextually(SymbolTables tables) {
+        new ContextualMutator(tables.runtime, tables.table).mutate(tables.javaAstList);
+        return tables.javaAstList;
+    }
+
+    @Benchmark
+    public Map<String, ClassSignature> buildClassTree(MutatedJavaAsts asts) {
+        return new ClassTreeVisitor().getClassTree(asts.javaAstList);
+    }
+
+    @Benchmark
+    public ClassHierarchy buildClassHierarchy(HeaderInputs inputs) {
+        return new ClassHierarchy(inputs.classTreeMap);
+    }
+
+    @Benchmark
+    public GNode buildHeaderAst(HeaderInputs inputs) {
+        return new HeaderAstBuilder(inputs.classHierarchy, inputs.packageInfo).buildHeaderAst();
+    }
+
+    @Benchmark
+    public Node mutate(ClassTrees trees) {
+        return new Mutator(trees.classHierarchy, trees.packageInfo, trees.conflictMethodNames).mutate(trees.javaAstList);
+    }
+
+    @Benchmark
+    public int printCpp(CppAsts asts) {
+        StringWriter header = new StringWriter();
+        StringWriter implementation = new StringWriter();
+        StringWriter main = new StringWriter();
+        new CppPrinter(header).printHeader(asts.headerAst);
+        new CppPrinter(implementation).printCpp(asts.mutatedCppAst);
+        new CppPrinter(main).printMain(asts.mainAst);
+        return header.getBuffer().length() + implementation.getBuffer().length() + main.getBuffer().length();
+    }
+}
@@ -0,0 +1,257 @@
+package edu.nyu.oop;
+
+import edu.nyu.oop.util.AstDiskCache;
+import edu.nyu.oop.util.NodeUtil;
+import edu.nyu.oop.util.ParseCache;
+import edu.nyu.oop.util.SourcePathIndex;
+import org.slf4j.Logger;
+
+import xtc.tree.Printer;
+import xtc.util.Runtime;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * This class translates many primary sources within one JVM. Each source is parsed and translated by its
+ * own Translator on a fixed-size worker pool, and writes output.h, output.cpp and main.cpp into a directory
+ * of its own named after the source file under the batch output location. Once every source has been
+ * handled, the status and timing of each translation are available as a list of results, in submission order.
+ * <p>
+ * xtc's Visitor dispatches through a static method lookup cache with a shared, pre-allocated key, so two
+ * visitors must never run concurrently on classes from the same class loader. Every worker thread therefore
+ * loads the translator and xtc through a class loader of its own over the application classpath, paying
+ * class loading and JIT warm-up once per worker rather than once per source. A worker's parse cache and
+ * java.lang class signatures likewise live as long as the worker does, and so does its index of the input
+ * locations, which it keeps up to date with the file system once told to watch the sources.
+ */
+public class BatchTranslator {
+    private Logger logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The outcome of translating a single primary source.
+     */
+    public static class Result {
+        private File source;
+        private File outputDirectory;
+        private long elapsedMillis;
+        private Throwable failure;
+
+        Result(File source, File outputDirectory, long elapsedMillis, Throwable failure) {
+            this.source = source;
+            this.outputDirectory = outputDirectory;
+            this.elapsedMillis = elapsedMillis;
+            this.failure = failure;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean succeeded() {
+            return failure == null;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    // the translate method of the copy of this class loaded by the current worker's own class loader
+    private final ThreadLocal<Method> isolatedTranslate = new ThreadLocal<Method>() {
+        protected Method initialValue() {
+            return loadIsolatedTranslate();
+        }
+    };
+
+    private List<File> inputDirectories;
+    private String outputRoot;
+    private ExecutorService executor;
+    private List<CompletableFuture<Result>> pending = new ArrayList<>();
+    private Set<String> outputNames = new HashSet<>();
+    private long startTime;
+    private long wallMillis;
+    private volatile boolean watchSources;
+    private volatile boolean astCache;
+
+    public BatchTranslator(List<File> inputDirectories, String outputRoot, int workers) {
+        this.inputDirectories = inputDirectories;
+        this.outputRoot = outputRoot;
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Makes the workers watch the input locations for sources created and deleted while they live, as
+     * long-running translators must, rather than indexing them once.
+     */
+    public void setWatchSources(boolean watchSources) {
+        this.watchSources = watchSources;
+    }
+
+    /**
+     * Makes the workers cache the sources they parse on disk, see AstDiskCache.
+     */
+    public void setAstCache(boolean astCache) {
+        this.astCache = astCache;
+    }
+
+    /**
+     * Queues the translation of a primary source into a directory named after it. Must be called from a
+     * single thread.
+     *
+     * @param source the primary source file
+     */
+    public void submit(File source) {
+        pending.add(translate(source, new File(outputRoot, uniqueOutputName(source))));
+    }
+
+    /**
+     * Queues the translation of a primary source into the given directory.
+     *
+     * @param source          the primary source file
+     * @param outputDirectory the directory receiving output.h, output.cpp and main.cpp
+     * @return the result of the translation, once a worker has handled it
+     */
+    public CompletableFuture<Result> translate(final File source, final File outputDirectory) {
+        return CompletableFuture.supplyAsync(new Supplier<Result>() {
+            public Result get() {
+                long start = System.nanoTime();
+                Throwable failure = null;
+                try {
+                    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+                        throw new RuntimeException("Unable to create output directory " + outputDirectory);
+                    isolatedTranslate.get().invoke(null, source, outputDirectory.getPath(), inputDirectories,
+                            watchSources, astCache);
+                } catch (InvocationTargetException e) {
+                    failure = e.getCause();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                if (failure != null)
+                    logger.error("Translation of " + source + " failed", failure);
+                return new Result(source, outputDirectory, (System.nanoTime() - start) / 1000000, failure);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for every queued translation and stops the worker pool.
+     *
+     * @return the results, in the order the sources were submitted
+     */
+    public List<Result> awaitResults() {
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> f : pending) {
+            try {
+                results.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for batch translation", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Batch translation worker failed", e.getCause());
+            }
+        }
+        wallMillis = (System.nanoTime() - startTime) / 1000000;
+        shutdown();
+        return results;
+    }
+
+    /**
+     * Stops the worker pool once the queued translations are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void printSummary(Printer printer, List<Result> results) {
+        int failed = 0;
+        long busyMillis = 0;
+        for (Result r : results) {
+            printer.p(r.succeeded() ? "OK     " : "FAILED ").p(String.format("%8d ms  ", r.getElapsedMillis()))
+                    .p(r.getSource().getPath()).p(" -> ").pln(r.getOutputDirectory().getPath());
+            if (!r.succeeded()) {
+                printer.p("       ").pln(String.valueOf(r.getFailure()));
+                failed++;
+            }
+            busyMillis += r.getElapsedMillis();
+        }
+        printer.pln().p(results.size()).p(" sources, ").p(failed).p(" failed, ")
+                .p(wallMillis).p(" ms wall time, ").p(busyMillis).pln(" ms translation time").flush();
+    }
+
+    /**
+     * Parses and translates a single primary source. Runs inside a worker's own class loader, where
+     * it is the only thread using xtc.
+     */
+    public static void translateIsolated(File source, String outputLocation, List<File> inputDirectories,
+                                         boolean watchSources, boolean astCache) {
+        ParseCache.enable();
+        if (astCache) AstDiskCache.enable();
+        if (watchSources) SourcePathIndex.get().watch();
+        new Translator(newRuntime(inputDirectories), NodeUtil.parseJavaFile(source), outputLocation).run();
+    }
+
+    /**
+     * Creates a runtime for translating with the given input directories, defaulting to the current
+     * directory like Boot when there are none.
+     */
+    public static Runtime newRuntime(List<File> inputDirectories) {
+        Runtime runtime = new Runtime();
+        runtime.dir("in", Runtime.INPUT_DIRECTORY, true, "");
+        List<String> args = new ArrayList<>();
+        for (File dir : inputDirectories) {
+            args.add("-in");
+            args.add(dir.getPath());
+        }
+        runtime.process(args.toArray(new String[args.size()]));
+        runtime.initDefaultValues();
+        return runtime;
+    }
+
+    private static Method loadIsolatedTranslate() {
+        try {
+            String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+            URL[] urls = new URL[entries.length];
+            for (int i = 0; i < entries.length; i++)
+                urls[i] = new File(entries[i]).toURI().toURL();
+            // skip the application class loader so that none of its classes are shared with the worker
+            ClassLoader loader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+            Class<?> c = Class.forName(BatchTranslator.class.getName(), true, loader);
+            return c.getMethod("translateIsolated", File.class, String.class, List.class, boolean.class,
+                    boolean.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to set up class loader for batch worker", e);
+        }
+    }
+
+    // names the output directory after the source file, disambiguating sources with the same name
+    private String uniqueOutputName(File source) {
+        String base = source.getName();
+        if (base.endsWith(".java"))
+            base = base.substring(0, base.length() - ".java".length());
+        String name = base;
+        for (int i = 2; !outputNames.add(name); i++)
+            name = base + "_" + i;
+        return name;
+    }
+}
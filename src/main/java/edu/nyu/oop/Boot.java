@@ -1,11 +1,22 @@
 package edu.nyu.oop;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import edu.nyu.oop.util.AstDiskCache;
 import edu.nyu.oop.util.JavaFiveImportParser;
 import edu.nyu.oop.util.NodeUtil;
 import edu.nyu.oop.util.SymbolTableBuilder;
@@ -17,6 +28,7 @@ import xtc.lang.JavaAstSimplifier;
 import xtc.lang.JavaEntities;
 import xtc.tree.GNode;
 import xtc.tree.Node;
+import xtc.tree.Printer;
 import xtc.util.SymbolTable;
 import xtc.util.Tool;
 import xtc.lang.JavaPrinter;
@@ -37,6 +49,9 @@ public class Boot extends Tool {
   private Logger logger =
           org.slf4j.LoggerFactory.getLogger(this.getClass());
 
+  private BatchTranslator batchTranslator;
+  private int firstFile; // set by parseOptions
+
   @Override
   public String getName() {
     return XtcProps.get("app.name");
@@ -66,7 +81,19 @@ public class Boot extends Tool {
             bool("printMutatedCppAst", "printMutatedCppAst", false, "Print mutated C++ Ast.").
             bool("printMainAst", "printMainAst", false, "Print C++ main Ast.").
             bool("printCppImplementation", "printCppImplementation", false, "Print C++ implementation files.").
-            bool("runTranslator", "runTranslator", false, "Run translator.");
+            bool("runTranslator", "runTranslator", false, "Run translator.").
+            bool("incremental", "incremental", false, "Only translate again the sources changed since the previous incremental translation.").
+            bool("streaming", "streaming", false, "Print the C++ of each class as soon as it is translated, keeping memory use flat.").
+            bool("lazyImports", "lazyImports", false, "Only parse and translate the imported sources declaring types the primary source refers to.").
+            bool("astCache", "astCache", false, "Cache parsed sources on disk in ast.cache.location, so unchanged ones are not parsed again.").
+            bool("printPhaseStats", "printPhaseStats", false, "Print time, allocations and AST size of each translator phase.").
+            word("phaseStatsJson", "phaseStatsJson", false, "Write time, allocations and AST size of each translator phase to a JSON file.").
+            bool("batchTranslate", "batchTranslate", false, "Translate all given sources concurrently, each into its own output directory.").
+            number("batchWorkers", "batchWorkers", Math.max(1, java.lang.Runtime.getRuntime().availableProcessors()), "Number of worker threads for batchTranslate.").
+            word("batchOutput", "batchOutput", false, "Output directory for batchTranslate and serve, defaults to output.location.").
+            bool("serve", "serve", false, "Serve translation requests from stdin, or from a local socket with servePort, without file arguments.").
+            number("servePort", "servePort", 0, "Local port for serve, 0 to read requests from stdin.").
+            number("serveQueue", "serveQueue", 64, "Number of requests serve queues beyond the busy workers.");
   }
 
   @Override
@@ -76,6 +103,67 @@ public class Boot extends Tool {
     // (i.e. are there some commands that cannot be run together?)
     logger.debug("This is a debugging statement."); // Example logging statement, you may delete
     runtime.setValue("optionNoExit", true); // ignore exception raised by xtc's own bug
+
+    for (String mode : new String[] {"batchTranslate", "serve"}) {
+      if (!runtime.test(mode)) continue;
+      // sources are handed to the batch workers unparsed, so no other command can see them
+      for (String cmd : new String[] {"printJavaAst", "printSimpleJavaAst", "printJavaCode", "cppFilePrinter",
+              "printJavaImportCode", "printSymbolTable", "printJavaAstList", "printMutatedJavaAstList",
+              "printHeaderAst", "printCppHeader", "printMutatedCppAst", "printMainAst", "printCppImplementation",
+              "runTranslator", "incremental", "streaming", "lazyImports", "printPhaseStats", "batchTranslate"}) {
+        if (!cmd.equals(mode) && runtime.test(cmd)) runtime.error(mode + " cannot be combined with " + cmd);
+      }
+      if (runtime.getString("phaseStatsJson") != null) runtime.error(mode + " cannot be combined with phaseStatsJson");
+      if (runtime.getInt("batchWorkers") < 1) runtime.error("batchWorkers must be at least 1");
+    }
+    if (runtime.test("serve") && runtime.getInt("serveQueue") < 0) runtime.error("serveQueue must not be negative");
+
+    if (runtime.test("astCache")) AstDiskCache.enable();
+
+    if (runtime.test("batchTranslate") && !runtime.seenError()) {
+      batchTranslator = new BatchTranslator(runtime.getFileList(Runtime.INPUT_DIRECTORY),
+              batchOutputRoot(), runtime.getInt("batchWorkers"));
+      batchTranslator.setAstCache(runtime.test("astCache"));
+    }
+  }
+
+  private String batchOutputRoot() {
+    String outputRoot = runtime.getString("batchOutput");
+    return outputRoot == null ? XtcProps.get("output.location") : outputRoot;
+  }
+
+  /**
+   * Serves translation requests until a shutdown is requested. See TranslationServer for the protocol.
+   */
+  private void serve() {
+    PrintStream answers = System.out;
+    if (runtime.getInt("servePort") == 0) {
+      // stdout only carries the answers. Everything else printed to it, like the log lines of the console
+      // appender, here and in the workers' class loaders, goes to stderr instead.
+      System.setOut(System.err);
+    }
+    TranslationServer server = new TranslationServer(runtime.getFileList(Runtime.INPUT_DIRECTORY),
+            batchOutputRoot(), runtime.getInt("batchWorkers"), runtime.getInt("serveQueue"));
+    server.setAstCache(runtime.test("astCache"));
+    if (runtime.getInt("servePort") == 0) {
+      server.serve(System.in, answers);
+    } else {
+      try {
+        server.listen(runtime.getInt("servePort"));
+      } catch (IOException e) {
+        runtime.error("Unable to serve on port " + runtime.getInt("servePort") + ": " + e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void wrapUp() {
+    super.wrapUp();
+    if (batchTranslator != null) {
+      List<BatchTranslator.Result> results = batchTranslator.awaitResults();
+      runtime.console().pln();
+      batchTranslator.printSummary(runtime.console(), results);
+    }
   }
 
   @Override
@@ -92,11 +180,22 @@ public class Boot extends Tool {
 
   @Override
   public Node parse(Reader in, File file) throws IOException, ParseException {
+    if (batchTranslator != null) {
+      batchTranslator.submit(file); // the batch workers do their own parsing, so there is nothing to process
+      return null;
+    }
     return NodeUtil.parseJavaFile(file);
   }
 
   @Override
   public void process(Node n) { // essentially the main method for phase 1
+    // one translator per source, so that its phases are shared by all the requested commands
+    Translator t = new Translator(runtime, n);
+    t.setIncremental(runtime.test("incremental"));
+    t.setStreaming(runtime.test("streaming"));
+    t.setLazyImports(runtime.test("lazyImports"));
+    t.setMeasured(runtime.test("printPhaseStats") || runtime.getString("phaseStatsJson") != null);
+
     if (runtime.test("printJavaAst")) {
       runtime.console().format(n).pln().flush();
     }
@@ -112,7 +211,9 @@ public class Boot extends Tool {
     }
 
     if (runtime.test("printJavaImportCode")) {
-      List<GNode> nodes = new JavaFiveImportParser().parse((GNode) n);
+      JavaFiveImportParser importParser = new JavaFiveImportParser();
+      importParser.setLazy(runtime.test("lazyImports"));
+      List<GNode> nodes = importParser.parse((GNode) n);
       for (Node node : nodes) {
         runtime.console().pln();
         new JavaPrinter(runtime.console()).dispatch(node);
@@ -134,7 +235,6 @@ public class Boot extends Tool {
     }
 
     if (runtime.test("printJavaAstList")) {
-      Translator t = new Translator(runtime, n);
       List<Node> nodes = t.getJavaAstList();
       for (Node node : nodes) {
         runtime.console().format(node).pln().flush();
@@ -142,7 +242,6 @@ public class Boot extends Tool {
     }
 
     if (runtime.test("printMutatedJavaAstList")) {
-      Translator t = new Translator(runtime, n);
       List<Node> nodes = t.getMutatedJavaAstList();
       for (Node node : nodes) {
         runtime.console().format(node).pln().flush();
@@ -150,37 +249,115 @@ public class Boot extends Tool {
     }
 
     if (runtime.test("printHeaderAst")) {
-      Translator t = new Translator(runtime, n);
       Node root = t.getHeaderAst();
       runtime.console().format(root).pln().flush();
     }
 
     if (runtime.test("printCppHeader")) {
-      Translator t = new Translator(runtime, n);
       t.printCppHeader();
     }
 
     if (runtime.test("printMutatedCppAst")) {
-      Translator t = new Translator(runtime, n);
       Node root = t.getMutatedCppAst();
       runtime.console().format(root).pln().flush();
     }
 
     if (runtime.test("printMainAst")) {
-      Translator t = new Translator(runtime, n);
       Node root = t.getMainAst();
       runtime.console().format(root).pln().flush();
     }
 
     if (runtime.test("printCppImplementation")) {
-      Translator t = new Translator(runtime, n);
       t.printCppImplementation();
     }
 
     if (runtime.test("runTranslator")) {
-      Translator t = new Translator(runtime, n);
       t.run();
     }
+
+    if (runtime.test("printPhaseStats") || runtime.getString("phaseStatsJson") != null) {
+      if (t.getPhaseStats().getRecords().isEmpty()) t.run(); // no other command translated, measure a full run
+      if (runtime.test("printPhaseStats")) {
+        t.getPhaseStats().print(runtime.console());
+      }
+      if (runtime.getString("phaseStatsJson") != null) {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(runtime.getString("phaseStatsJson")), "utf-8")) {
+          t.getPhaseStats().writeJson(w, n.getLocation() == null ? "" : n.getLocation().file);
+        } catch (IOException e) {
+          runtime.error("Unable to write phase stats: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Expands file arguments containing glob characters into the matching files under the project root,
+   * as sbt's runxtc does not hand its arguments to a shell. Options and their values are left as they are.
+   *
+   * @param args The command line arguments.
+   */
+  @Override
+  public void run(String[] args) {
+    Boot options = parseOptions(args);
+    int files = options.firstFile;
+    List<String> expanded = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (i < files || !args[i].matches(".*[*?\\[{].*")) expanded.add(args[i]);
+      else expanded.addAll(expandGlob(args[i]));
+    }
+    args = expanded.toArray(new String[expanded.size()]);
+
+    if (options.runtime.test("serve")) {
+      // the server takes its sources from requests, so it skips the processing of file arguments
+      init();
+      runtime.process(args);
+      prepare();
+      if (!runtime.seenError()) serve();
+      return;
+    }
+
+    super.run(args);
+  }
+
+  // a Boot holding the options of the given arguments and the index of the first file argument, found the way
+  // the runtime finds them, so that the values of options are taken neither for files nor for other options
+  private static Boot parseOptions(String[] args) {
+    Boot options = new Boot();
+    options.init();
+    options.runtime.setErrConsole(new Printer(new StringWriter())); // reported when the arguments are processed
+    options.firstFile = options.runtime.process(args);
+    options.runtime.initDefaultValues();
+    return options;
+  }
+
+  // the files matching the glob, relative to the project root unless it is absolute, walking only the
+  // directory named by its literal leading components
+  private List<String> expandGlob(String glob) {
+    final Path root = Paths.get(System.getProperty("user.dir"));
+    final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    final boolean absolute = Paths.get(glob.replaceAll("[*?\\[\\]{}]", "_")).isAbsolute();
+
+    String[] components = glob.split("/", -1);
+    int literal = 0;
+    while (literal < components.length - 1 && !components[literal].matches(".*[*?\\[{].*")) literal++;
+    String prefix = String.join("/", Arrays.asList(components).subList(0, literal));
+    Path start = prefix.isEmpty() ? (absolute ? Paths.get("/") : root) : root.resolve(prefix);
+    // a component spans a single directory, unless some ** matches across them
+    int depth = glob.contains("**") ? Integer.MAX_VALUE : components.length - literal;
+
+    List<String> matches = new ArrayList<>();
+    if (Files.isDirectory(start)) {
+      try (Stream<Path> paths = Files.walk(start, depth)) {
+        matches = paths.filter(p -> Files.isRegularFile(p))
+                .map(p -> absolute ? p : root.relativize(p))
+                .filter(matcher::matches)
+                .map(Path::toString).sorted().collect(Collectors.toList());
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to expand " + glob, e);
+      }
+    }
+    if (matches.isEmpty()) logger.warn("No files match " + glob);
+    return matches;
   }
 
   /**
@@ -0,0 +1,103 @@
+package edu.nyu.oop;
+
+import java.util.*;
+
+/**
+ * An index of the class tree built by ClassTreeVisitor, computed once the class tree is complete, which the
+ * later phases query instead of following the superclass names of the signatures themselves. It holds the
+ * ancestors of every class, the fields its instances inherit and the layout of its vtable.
+ * <p>
+ * The index is immutable, and must be built again if the class tree changes. Classes whose superclass is not
+ * part of the class tree, like Object or a class extending Exception, are roots, and their vtables start with
+ * the layout of Object. Classes whose superclasses lead back to themselves, which javac rejects, are indexed
+ * without failing: their ancestors stop before the class met again, and their vtables start with the layout
+ * of Object where the cycle closes.
+ */
+public class ClassHierarchy {
+    private final Map<String, ClassSignature> classTree;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private static class Entry {
+        final ClassSignature signature;
+        Entry superclass;
+        List<String> ancestors;
+        List<FieldSignature> inheritedFields;
+        VTable.Layout layout;
+
+        Entry(ClassSignature signature) {
+            this.signature = signature;
+        }
+    }
+
+    public ClassHierarchy(Map<String, ClassSignature> classTree) {
+        this.classTree = Collections.unmodifiableMap(classTree);
+        for (Map.Entry<String, ClassSignature> e : classTree.entrySet())
+            entries.put(e.getKey(), new Entry(e.getValue()));
+        for (Entry e : entries.values())
+            e.superclass = entries.get(e.signature.getParentClassName());
+
+        VTable vt = new VTable();
+        Map<String, VTable.Layout> layouts = new HashMap<>();
+        for (String name : classTree.keySet()) {
+            Entry e = entries.get(name);
+            e.ancestors = Collections.unmodifiableList(ancestors(e));
+            e.inheritedFields = inheritedFields(e);
+            e.layout = vt.getLayout(classTree, name, layouts);
+        }
+    }
+
+    // nearest first, stopping at a class met before in case the superclasses are cyclic
+    private static List<String> ancestors(Entry e) {
+        List<String> ancestors = new ArrayList<>();
+        Set<Entry> seen = new HashSet<>();
+        seen.add(e);
+        for (Entry a = e.superclass; a != null && seen.add(a); a = a.superclass)
+            ancestors.add(a.signature.getClassName());
+        return ancestors;
+    }
+
+    // the instance fields of the ancestors, the root's first, as DataLayout lays them out
+    private List<FieldSignature> inheritedFields(Entry e) {
+        List<FieldSignature> fields = new ArrayList<>();
+        for (int i = e.ancestors.size() - 1; i >= 0; i--)
+            for (FieldSignature f : entries.get(e.ancestors.get(i)).signature.getFieldList())
+                if (!f.getModifier().contains("static"))
+                    fields.add(f);
+        return Collections.unmodifiableList(fields);
+    }
+
+    private Entry entry(String name) {
+        Entry e = entries.get(name);
+        if (e == null) throw new IllegalArgumentException("Unknown class " + name);
+        return e;
+    }
+
+    /**
+     * Returns the class tree the index was built from, by class name, in declaration order.
+     */
+    public Map<String, ClassSignature> getClassTree() {
+        return classTree;
+    }
+
+    public ClassSignature getSignature(String name) {
+        return entry(name).signature;
+    }
+
+    /**
+     * Returns the names of the ancestors of the given class, its superclass first.
+     */
+    public List<String> getAncestors(String name) {
+        return entry(name).ancestors;
+    }
+
+    /**
+     * Returns the instance fields the given class inherits, those of the root first.
+     */
+    public List<FieldSignature> getInheritedFields(String name) {
+        return entry(name).inheritedFields;
+    }
+
+    public VTable.Layout getLayout(String name) {
+        return entry(name).layout;
+    }
+}
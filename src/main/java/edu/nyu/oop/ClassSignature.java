@@ -5,6 +5,9 @@ import xtc.tree.GNode;
 import xtc.tree.Node;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A ClassSignature encapsulates the sufficient info to characterise a class.
@@ -57,6 +60,23 @@ public class ClassSignature {
         this.constructor_list.add(n);
     }
 
+    private static Map<String, ClassSignature> javaLangClasses;
+
+    /**
+     * Returns the signatures of Object, String and Class, built once and shared by every class tree
+     * afterwards. They must not be modified.
+     */
+    public static synchronized Map<String, ClassSignature> javaLangClasses() {
+        if (javaLangClasses == null) {
+            Map<String, ClassSignature> map = new LinkedHashMap<>();
+            map.put("Object", buildObject());
+            map.put("String", buildString());
+            map.put("Class", buildClass());
+            javaLangClasses = Collections.unmodifiableMap(map);
+        }
+        return javaLangClasses;
+    }
+
     public static ClassSignature buildObject() {
         ClassSignature object_class = new ClassSignature("Object", "null");
 
@@ -1,28 +1,32 @@
 package edu.nyu.oop;
 
-import edu.nyu.oop.util.ChildToParentMap;
-import edu.nyu.oop.util.NodeUtil;
 import edu.nyu.oop.util.RecursiveVisitor;
 import xtc.tree.GNode;
 import xtc.tree.Node;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A ClassTreeVisitor visits a list of Java ASTs, and resolves the inheritance relationship
  * among the Java classes, with the class hierarchy info stored in a hash table. It also
  * parses the ASTs to generate the signature of each Java class, as well as the signatures
  * of each field, method, and constructor of the class.
+ * <p>
+ * The classes are kept in declaration order, or in the order given by setClassOrder, e.g. that of a
+ * SourceDependencyGraph, which is known before the sources are parsed and lists superclasses first.
  */
 public class ClassTreeVisitor extends RecursiveVisitor {
     private Map<String,  ClassSignature> tree_map;
-    private ChildToParentMap child_parent_map;
     private ClassSignature current_class;
     List<String> package_declaration = new ArrayList<>();
-    List<String> conflict_method_names = new ArrayList<>();
+    Set<String> conflict_method_names = new LinkedHashSet<>();
+    private List<String> class_order;
 
     public void visitClassDeclaration(GNode n) {
         String class_name, parent_class_name;
@@ -37,24 +41,28 @@ public class ClassTreeVisitor extends RecursiveVisitor {
         tree_map.put(class_name, current_class);
     }
 
-    public void visitFieldDeclaration(GNode n) {
-        if (!child_parent_map.fetchParentFor(n).getName().equals("ClassBody"))
-            return;
+    // only the fields of classes have a signature, the children of local variable declarations are not visited
+    public void visitClassBody(GNode n) {
+        for (Object o : n) {
+            if (o instanceof Node && ((Node) o).hasName("FieldDeclaration"))
+                extractFieldSignature((GNode) o);
+            else if (o instanceof Node)
+                dispatch((Node) o);
+        }
+    }
 
-        List<String> modifiers = new ArrayList<>();
-        Node mods = NodeUtil.dfs(n, "Modifiers");
-        for (Node mod : NodeUtil.dfsAll(mods, "Modifier"))
-            modifiers.add(mod.getString(0));
+    public void visitFieldDeclaration(GNode n) {
+    }
 
-        Node tp = NodeUtil.dfs(n, "Type");
-        String typeName = tp.getNode(0).getString(0);
-        Node typeDimension = tp.getNode(1);
-        tp = TypeResolver.createType(typeName, typeDimension);
+    // FieldDeclaration(Modifiers, Type, Declarators)
+    private void extractFieldSignature(GNode n) {
+        List<String> modifiers = modifiers(n.getNode(0));
+        Node tp = type(n.getNode(1));
 
-        List<String> declarators = new ArrayList<>();
-        Node decs = NodeUtil.dfs(n, "Declarators");
-        for (Node dec : NodeUtil.dfsAll(decs, "Declarator"))
-            declarators.add(dec.getString(0));
+        Node decs = n.getNode(2);
+        List<String> declarators = new ArrayList<>(decs.size());
+        for (Object dec : decs)
+            declarators.add(((Node) dec).getString(0));
 
         FieldSignature f = new FieldSignature(modifiers, tp, declarators);
         current_class.addField(f);
@@ -62,6 +70,8 @@ public class ClassTreeVisitor extends RecursiveVisitor {
         visit(n);
     }
 
+    // MethodDeclaration(Modifiers, TypeParameters, ResultType, Identifier, FormalParameters, Dimensions,
+    // ThrowsClause, Block)
     public void visitMethodDeclaration(GNode n){
         String method_name = n.getString(3);
         Node return_type = n.getNode(2);
@@ -74,39 +84,23 @@ public class ClassTreeVisitor extends RecursiveVisitor {
             return;
         }
 
-        List<String> modifiers = new ArrayList<>();
-        Node mods = NodeUtil.dfs(n, "Modifiers");
-        for (Node mod : NodeUtil.dfsAll(mods, "Modifier"))
-            modifiers.add(mod.getString(0));
+        List<String> modifiers = modifiers(n.getNode(0));
 
         if (return_type.size() == 0)
             return_type = TypeResolver.createType("void", null);
-        else {
-            String typeName = return_type.getNode(0).getString(0);
-            Node typeDimension = return_type.getNode(1);
-            return_type = TypeResolver.createType(typeName, typeDimension);
-        }
+        else
+            return_type = type(return_type);
 
-        List<String> parameters = new ArrayList<>();
-        Node params = NodeUtil.dfs(n,"FormalParameters");
-        for (Node param : NodeUtil.dfsAll(params,"FormalParameter"))
-            parameters.add(param.getString(3));
-
-        List<Node> parameter_types = new ArrayList<>();
-        Node pts = NodeUtil.dfs(n, "FormalParameters");
-        for (Node pt : NodeUtil.dfsAll(pts, "FormalParameter")) {
-            Node tp = pt.getNode(1);
-            String typeName = tp.getNode(0).getString(0);
-            Node typeDimension = tp.getNode(1);
-            tp = TypeResolver.createType(typeName, typeDimension);
-            parameter_types.add(tp);
-        }
+        Node params = n.getNode(4);
+        List<String> parameters = new ArrayList<>(params.size());
+        List<Node> parameter_types = new ArrayList<>(params.size());
+        formalParameters(params, parameters, parameter_types);
 
         // assume no other method named "main" though and do not support array typed parameters
         if (!method_name.equals("main")) {
             StringBuilder new_name = new StringBuilder(method_name);
             for (Node tp : parameter_types)
-                new_name.append("_" + TypeResolver.javaTypeToString(tp));
+                new_name.append('_').append(TypeResolver.javaTypeToString(tp));
             method_name = new_name.toString();
             n.set(3, method_name);
         }
@@ -121,20 +115,10 @@ public class ClassTreeVisitor extends RecursiveVisitor {
     public void extractConstructorSignature(GNode n) {
         String name = n.getString(3);
 
-        List<String> parameters = new ArrayList<>();
-        Node params = NodeUtil.dfs(n, "FormalParameters");
-        for (Node param : NodeUtil.dfsAll(params, "FormalParameter"))
-            parameters.add(param.getString(3));
-
-        List<Node> parameter_types = new ArrayList<>();
-        Node pts = NodeUtil.dfs(n, "FormalParameters");
-        for (Node pt : NodeUtil.dfsAll(pts, "FormalParameter")) {
-            Node tp = pt.getNode(1);
-            String typeName = tp.getNode(0).getString(0);
-            Node typeDimension = tp.getNode(1);
-            tp = TypeResolver.createType(typeName, typeDimension);
-            parameter_types.add(tp);
-        }
+        Node params = n.getNode(4);
+        List<String> parameters = new ArrayList<>(params.size());
+        List<Node> parameter_types = new ArrayList<>(params.size());
+        formalParameters(params, parameters, parameter_types);
 
         ConstructorSignature c = new ConstructorSignature(name, parameters, parameter_types);
         current_class.addConstructor(c);
@@ -142,7 +126,31 @@ public class ClassTreeVisitor extends RecursiveVisitor {
         visit(n);
     }
 
+    // Modifiers(Modifier*), where annotations are left out
+    private static List<String> modifiers(Node mods) {
+        List<String> modifiers = new ArrayList<>(mods.size());
+        for (Object mod : mods)
+            if (((Node) mod).hasName("Modifier"))
+                modifiers.add(((Node) mod).getString(0));
+        return modifiers;
+    }
+
+    // Type(TypeName, Dimensions), as the signatures refer to types
+    private static Node type(Node tp) {
+        return TypeResolver.createType(tp.getNode(0).getString(0), tp.getNode(1));
+    }
+
+    // FormalParameters(FormalParameter(Modifiers, Type, null, Identifier, Dimensions)*)
+    private static void formalParameters(Node params, List<String> names, List<Node> types) {
+        for (Object o : params) {
+            Node param = (Node) o;
+            names.add(param.getString(3));
+            types.add(type(param.getNode(1)));
+        }
+    }
+
     public void visitPackageDeclaration(GNode n){
+        if (!package_declaration.isEmpty()) return; // the other sources of the package declare it again
         Node temp = n.getNode(1);
         for (int i=0; i<temp.size(); i++) {
             package_declaration.add(temp.getString(i));
@@ -153,39 +161,59 @@ public class ClassTreeVisitor extends RecursiveVisitor {
         return package_declaration;
     }
 
-    public List<String> getConflictMethodNames() {
+    public Set<String> getConflictMethodNames() {
         return conflict_method_names;
     }
 
+    /**
+     * Orders the classes by the given names. Classes not named come after the others, in declaration order.
+     */
+    public void setClassOrder(List<String> class_order) {
+        this.class_order = class_order;
+    }
+
     public Map<String, ClassSignature> getClassTree(List<Node> javaAstList) {
-        tree_map = new HashMap<>();
+        // kept in declaration order, so that the header declares the classes in the same order on every run
+        tree_map = new LinkedHashMap<>();
 
         // prepopulate Object, String and Class
-        tree_map.put("Object", ClassSignature.buildObject());
-        tree_map.put("String", ClassSignature.buildString());
-        tree_map.put("Class", ClassSignature.buildClass());
+        for (Map.Entry<String, ClassSignature> e : ClassSignature.javaLangClasses().entrySet())
+            tree_map.put(e.getKey(), e.getValue());
 
         // traverse the whole AST forest
-        for (Node tree: javaAstList) {
-            child_parent_map = new ChildToParentMap(tree);
+        for (Node tree: javaAstList)
             super.dispatch(tree);
-        }
+        if (class_order != null)
+            orderClasses();
         mangleMethodName();
 
         return tree_map;
     }
 
+    private void orderClasses() {
+        Map<String, ClassSignature> ordered = new LinkedHashMap<>();
+        for (String name : ClassSignature.javaLangClasses().keySet())
+            ordered.put(name, tree_map.get(name));
+        for (String name : class_order)
+            if (tree_map.containsKey(name))
+                ordered.put(name, tree_map.get(name));
+        ordered.putAll(tree_map); // keeps the position of the classes already added
+        tree_map = ordered;
+    }
+
+    // a method named like a field of its class is renamed, in the class and at every call. The java.lang
+    // classes are shared by every class tree and implemented by java_lang.h as they are, so they are skipped.
     private void mangleMethodName() {
         for (ClassSignature c : tree_map.values()) {
+            if (c.getFieldList().isEmpty() || ClassSignature.javaLangClasses().get(c.getClassName()) == c) continue;
+            Set<String> fieldNames = new HashSet<>();
+            for (FieldSignature f : c.getFieldList())
+                fieldNames.addAll(f.getDeclarators());
             for (MethodSignature m : c.getMethodList()) {
                 String methodName = m.getMethodName();
-                for (FieldSignature f : c.getFieldList()) {
-                    for (String fieldName : f.getDeclarators()) {
-                        if (fieldName.equals(methodName)) {
-                            conflict_method_names.add(methodName);
-                            m.setMethodName(m.getMethodName() + "_impl");
-                        }
-                    }
+                if (fieldNames.contains(methodName)) {
+                    conflict_method_names.add(methodName);
+                    m.setMethodName(methodName + "_impl");
                 }
             }
         }
@@ -14,8 +14,10 @@ import xtc.type.VariableT;
 import xtc.util.Runtime;
 import xtc.util.SymbolTable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * This class mutates the input list of Java ASTs and outputs the modified Java ASTs
@@ -25,8 +27,12 @@ import java.util.Arrays;
  */
 public class ContextualMutator extends ContextualVisitor {
 
-    static int counter = 0;
+    private int counter = 0;
     private SymbolTable table;
+    // the fields each class has, by the name of its scope, found once per class
+    private Map<String, Map<String, VariableT>> fieldsByClass = new HashMap<>();
+    // the methods calls resolve to, see resolve
+    private Map<String, ResolvedCall> callsBySignature = new HashMap<>();
 
     public ContextualMutator(Runtime runtime, SymbolTable table) {
         super(runtime, table);
@@ -38,6 +44,13 @@ public class ContextualMutator extends ContextualVisitor {
             super.dispatch(tree);
     }
 
+    // temporaries are scoped to the statement expression they are declared in, so numbering them per method
+    // is enough, and keeps the C++ of a method the same when other methods change
+    public void visitMethodDeclaration(GNode n) {
+        counter = 0;
+        super.visitMethodDeclaration(n);
+    }
+
     public Node visitCallExpression(GNode n) {
         Node receiver = n.getNode(0);
         Node argus = n.getNode(3);
@@ -80,8 +93,8 @@ public class ContextualMutator extends ContextualVisitor {
 
             visit(n);
 
-            MethodT method =
-                    JavaEntities.typeDotMethod(table, classpath(), typeToSearch, true, methodName, actuals);
+            ResolvedCall call = resolve(typeToSearch, methodName, actuals);
+            MethodT method = call.method;
 
 //            System.out.println(typeToSearch);
 //            System.out.println(actuals);
@@ -95,21 +108,11 @@ public class ContextualMutator extends ContextualVisitor {
             else
                 receiver_type_name = typeToSearch.toClass().getName();
 
-            // extract param types to generate new name
-            List<Type> param_use = method.getParameters();
-            String new_name = methodName;
-            for (int i = 0; i < param_use.size(); i++) {
-                String temp;
-                if (param_use.get(i).hasAlias())
-                    temp = param_use.get(i).toAlias().getName();
-                else
-                    temp = param_use.get(i).toVariable().getType().toString();
-                new_name = new_name + "_" + temp;
-            }
+            String new_name = call.mangledName;
 
 //            System.out.println("new name is: " + new_name);
             // make this access explicit
-            if (!TypeUtil.isStaticType(method)) {
+            if (!call.isStatic) {
                 if (receiver == null)
                     n.set(0, makeThisExpression());
             }
@@ -129,12 +132,12 @@ public class ContextualMutator extends ContextualVisitor {
                         GNode.create("Arguments", primary_id)));
 
                 // custom mutation based on method type
-                if (TypeUtil.isStaticType(method)) {
+                if (call.isStatic) {
                     //__A::m();
                     replacement.add(create_staticcallexp(GNode.create("PrimaryIdentifier", receiver_type_name),
                             new_name,
                             n.getNode(3)));
-                } else if (TypeUtil.isPrivateType(method)) {
+                } else if (call.isPrivate) {
                     //__A::m(temp);
                     replacement.add(create_staticcallexp(GNode.create("PrimaryIdentifier", receiver_type_name),
                             new_name,
@@ -171,16 +174,7 @@ public class ContextualMutator extends ContextualVisitor {
         if (typeToSearch == null) return n;
 
         // find type of
-        VariableT field = null;
-        SymbolTable.Scope oldScope = table.current();
-        JavaEntities.enterScopeByQualifiedName(table, typeToSearch.getScope());
-        for (final VariableT f : JavaEntities.fieldsOwnAndInherited(table, classpath(), typeToSearch))
-            if (f.getName().equals(fieldName)) {
-                field = f;
-                break;
-            }
-        table.setScope(oldScope);
-
+        VariableT field = fields(typeToSearch).get(fieldName);
         if (field == null) return n;
 
         // make this access explicit
@@ -198,6 +192,69 @@ public class ContextualMutator extends ContextualVisitor {
         return n;
     }
 
+    // The method a call resolves to, found once per calling class, receiver type, name and argument types,
+    // which are all typeDotMethod depends on. The calling class matters for which methods are accessible.
+    private ResolvedCall resolve(Type typeToSearch, String methodName, List<Type> actuals) {
+        ClassOrInterfaceT caller = JavaEntities.currentType(table);
+        StringBuilder key = new StringBuilder();
+        key.append(caller == null ? "" : caller.getScope()).append('|').append(typeToSearch).append('|')
+                .append(methodName);
+        for (Type actual : actuals)
+            key.append('|').append(actual);
+
+        ResolvedCall call = callsBySignature.get(key.toString());
+        if (call == null) {
+            call = new ResolvedCall(methodName,
+                    JavaEntities.typeDotMethod(table, classpath(), typeToSearch, true, methodName, actuals));
+            callsBySignature.put(key.toString(), call);
+        }
+        return call;
+    }
+
+    private static class ResolvedCall {
+        final MethodT method;
+        final String mangledName;
+        final boolean isStatic;
+        final boolean isPrivate;
+
+        ResolvedCall(String methodName, MethodT method) {
+            this.method = method;
+            if (method == null) {
+                mangledName = null;
+                isStatic = isPrivate = false;
+                return;
+            }
+            // extract param types to generate new name
+            StringBuilder name = new StringBuilder(methodName);
+            for (Type param : method.getParameters()) {
+                name.append('_');
+                if (param.hasAlias())
+                    name.append(param.toAlias().getName());
+                else
+                    name.append(param.toVariable().getType().toString());
+            }
+            mangledName = name.toString();
+            isStatic = TypeUtil.isStaticType(method);
+            isPrivate = TypeUtil.isPrivateType(method);
+        }
+    }
+
+    // The fields of the given class, own and inherited, by name. Inherited fields come first in
+    // fieldsOwnAndInherited, and the first field of a name is the one an identifier refers to.
+    private Map<String, VariableT> fields(ClassOrInterfaceT type) {
+        Map<String, VariableT> fields = fieldsByClass.get(type.getScope());
+        if (fields == null) {
+            fields = new HashMap<>();
+            SymbolTable.Scope oldScope = table.current();
+            JavaEntities.enterScopeByQualifiedName(table, type.getScope());
+            for (final VariableT f : JavaEntities.fieldsOwnAndInherited(table, classpath(), type))
+                if (!fields.containsKey(f.getName())) fields.put(f.getName(), f);
+            table.setScope(oldScope);
+            fieldsByClass.put(type.getScope(), fields);
+        }
+        return fields;
+    }
+
     public List<Type> visitArguments(final GNode n) {
         List<Type> result = new ArrayList<Type>(n.size());
         for (int i = 0; i < n.size(); i++) {
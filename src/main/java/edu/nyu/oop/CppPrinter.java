@@ -1,11 +1,15 @@
 package edu.nyu.oop;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
+import edu.nyu.oop.util.AtomicFileWriter;
 import edu.nyu.oop.util.ChildToParentMap;
 import edu.nyu.oop.util.RecursiveVisitor;
 import edu.nyu.oop.util.XtcProps;
 import org.slf4j.Logger;
+import xtc.Constants;
 import xtc.tree.*;
 
 /**
@@ -14,24 +18,61 @@ import xtc.tree.*;
 public class CppPrinter extends RecursiveVisitor {
     private Logger logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
 
-    private static int flag = -1;
+    // markers of a fragment, for the indentation of a line and for the level the fragment ends at
+    private static final char LEVEL = '\u0001';
+    private static final char INDENT = '\u0002';
+    private static final char END = '\u0003';
+
+    private int flag = -1;
+
+    private int openNamespaces = 0;
 
     private ChildToParentMap childParentMap;
 
     private Printer printer;
 
-    private String outputLocation = XtcProps.get("output.location");
+    private String outputLocation;
 
     public CppPrinter(String outputFile) {
-        Writer w = null;
-        try {
-            FileOutputStream fos = new FileOutputStream(outputLocation + outputFile);
-            OutputStreamWriter ows = new OutputStreamWriter(fos, "utf-8");
-            w = new BufferedWriter(ows);
-            this.printer = new Printer(w);
-        } catch (Exception e) {
+        this(XtcProps.get("output.location"), outputFile);
+    }
+
+    public CppPrinter(String outputLocation, String outputFile) {
+        this.outputLocation = outputLocation;
+        if (!new File(outputLocation).isDirectory())
             throw new RuntimeException("Output location not found. Create the /output directory.");
-        }
+        // the file is only rewritten if its content changed, so C++ builds do not recompile for nothing
+        init(new Printer(new AtomicFileWriter(new File(outputLocation + outputFile), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Prints to the given writer instead of a file, e.g. to keep the output in memory.
+     */
+    public CppPrinter(Writer w) {
+        init(new Printer(w));
+    }
+
+    private CppPrinter(Printer printer) {
+        init(printer);
+    }
+
+    /**
+     * Creates a printer for printCppFragment, printing to the given writer.
+     */
+    public static CppPrinter fragmentPrinter(Writer w) {
+        return new CppPrinter(new Printer(w) {
+            // leave the indentation as a marker holding the level relative to the start of the fragment
+            public Printer indent() {
+                out.print(LEVEL);
+                out.print(level());
+                out.print(INDENT);
+                return this;
+            }
+        });
+    }
+
+    private void init(Printer printer) {
+        this.printer = printer;
 
         // Register the visitor as being associated with this printer.
         // We do this so we get some nice convenience methods on the printer,
@@ -64,6 +105,59 @@ public class CppPrinter extends RecursiveVisitor {
         printer.flush();
     }
 
+    /**
+     * Prints the declarations of an implementation AST the way printCpp prints them within the whole file,
+     * but without the head of the file and the namespaces around them. Since printCpp indents each line
+     * according to everything printed before it, a fragment printer leaves the indentation as markers,
+     * which visitCppFragment turns into spaces once the fragment is placed within a file.
+     */
+    public void printCppFragment(Node source) {
+        childParentMap = new ChildToParentMap(source);
+        flag=1;
+        Node declarations = source;
+        for (Node n = innerNamespace(source); n != null; n = innerNamespace(n))
+            declarations = n;
+        visit(declarations);
+        printer.p(LEVEL).p(printer.level()).p(END).flush();
+    }
+
+    /**
+     * Starts an implementation file the way printCpp does, up to the declarations within the given namespaces,
+     * so that they can be printed one part at a time with printCppDeclarations rather than from a whole AST.
+     * closeCpp ends the file.
+     */
+    public void openCpp(List<String> namespaces) {
+        flag=1;
+        openNamespaces = namespaces.size();
+        cppHeadOfFile();
+        for (String namespace : namespaces) {
+            printer.indent().incr().p("namespace " + namespace);
+            printer.pln(" {").pln();
+        }
+    }
+
+    /**
+     * Prints the declarations held by the given node where printCpp would print them, between openCpp and
+     * closeCpp.
+     */
+    public void printCppDeclarations(Node source) {
+        childParentMap = new ChildToParentMap(source);
+        visit(source);
+    }
+
+    public void closeCpp() {
+        for (; openNamespaces > 0; openNamespaces--)
+            printer.decr().indent().pln("}").pln();
+        printer.flush();
+    }
+
+    private Node innerNamespace(Node n) {
+        for (Object o : n) {
+            if (o instanceof Node) return ((Node) o).hasName("NamespaceDeclaration") ? (Node) o : null;
+        }
+        return null;
+    }
+
     public void printMain(Node source) {
         childParentMap = new ChildToParentMap(source);
         flag=2;
@@ -226,6 +320,31 @@ public class CppPrinter extends RecursiveVisitor {
         printer.decr().indent().pln("}").pln();
     }
 
+    // C++ code printed beforehand by a fragment printer, see printCppFragment
+    public void visitCppFragment(GNode source) {
+        String fragment = source.getString(0);
+        int start = printer.level();
+        int i = 0;
+        while (i < fragment.length()) {
+            int marker = fragment.indexOf(LEVEL, i);
+            if (marker < 0) marker = fragment.length();
+            printer.p(fragment.substring(i, marker));
+            if (marker == fragment.length()) break;
+
+            int kind = marker + 1;
+            while (fragment.charAt(kind) != INDENT && fragment.charAt(kind) != END) kind++;
+            int level = start + Integer.parseInt(fragment.substring(marker + 1, kind));
+            if (fragment.charAt(kind) == INDENT) {
+                for (int j = 0; j < level * Constants.INDENTATION; j++)
+                    printer.p(' ');
+            } else {
+                while (printer.level() > level) printer.decr();
+                while (printer.level() < level) printer.incr();
+            }
+            i = kind + 1;
+        }
+    }
+
     public void visitForwardDeclarations(GNode source){
         visit(source);
     }
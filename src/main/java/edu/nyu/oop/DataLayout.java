@@ -9,14 +9,13 @@ import xtc.tree.GNode;
  */
 public class DataLayout {
     private ClassSignature thisClass;
-    private Map<String, ClassSignature> classTreeMap;
     private List<FieldSignature> fieldMap;
 
-    public DataLayout(ClassSignature c, Map<String, ClassSignature> map) {
+    public DataLayout(ClassSignature c, ClassHierarchy hierarchy) {
         thisClass = c;
-        classTreeMap = map;
-        fieldMap = new ArrayList<>();
-        fillFieldMap(thisClass);
+        // the instance fields of the superclasses, followed by all fields of the class
+        fieldMap = new ArrayList<>(hierarchy.getInheritedFields(c.getClassName()));
+        fieldMap.addAll(c.getFieldList());
     }
 
     public GNode makeDataLayout() {
@@ -66,20 +65,6 @@ public class DataLayout {
         return classDec;
     }
 
-    private void fillFieldMap(ClassSignature c) {
-        if (c.getParentClassName().compareTo("null")!=0)
-            fillFieldMap(classTreeMap.get(c.getParentClassName()));
-
-        if (c.equals(thisClass))
-            fieldMap.addAll(c.getFieldList());
-        else {
-            for (FieldSignature f : c.getFieldList()) {
-                if (!f.getModifier().contains("static"))
-                    fieldMap.add(f);
-            }
-        }
-    }
-
     private GNode makePtrToVtableField() {
         FieldSignature f = new FieldSignature(
                 new ArrayList<>(),
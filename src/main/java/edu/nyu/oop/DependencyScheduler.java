@@ -0,0 +1,163 @@
+package edu.nyu.oop;
+
+import xtc.tree.GNode;
+import xtc.tree.Node;
+import xtc.tree.Visitor;
+
+import java.util.*;
+
+/**
+ * This class orders a list of Java ASTs so that every source comes after the sources declaring the types it
+ * refers to. The symbol table builder resolves a type when it meets it, so a source is only analyzed
+ * correctly once the sources it depends on are in the symbol table.
+ * <p>
+ * A source depends on the sources declaring the classes and interfaces it names, by their simple names as
+ * ClassTreeVisitor knows them. A bare identifier, like the A of A.m(), only names a type if the source
+ * declares no field, parameter or local variable of that name anywhere, since a variable in scope would
+ * hide the type, and scopes are not tracked. The sources are grouped into strongly connected components, which come in
+ * dependency order. The sources of a component depend on each other, and keep the order of the list.
+ */
+public class DependencyScheduler {
+    private List<Node> trees;
+    private List<List<Node>> components = new ArrayList<>();
+
+    // Tarjan's algorithm
+    private Map<Node, Integer> index = new IdentityHashMap<>();
+    private Map<Node, Integer> lowLink = new IdentityHashMap<>();
+    private Deque<Node> stack = new ArrayDeque<>();
+    private Set<Node> onStack = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    private Map<Node, List<Node>> dependencies = new IdentityHashMap<>();
+
+    public DependencyScheduler(List<Node> trees) {
+        this.trees = trees;
+        Map<String, Node> declaringTrees = new HashMap<>();
+        for (Node tree : trees)
+            for (String name : declaredTypes(tree))
+                if (!declaringTrees.containsKey(name)) declaringTrees.put(name, tree);
+
+        for (Node tree : trees) {
+            Set<Node> found = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            List<Node> treeDependencies = new ArrayList<>();
+            for (String name : referencedTypes(tree, declaringTrees.keySet())) {
+                Node t = declaringTrees.get(name);
+                if (t != tree && found.add(t)) treeDependencies.add(t);
+            }
+            dependencies.put(tree, treeDependencies);
+        }
+
+        for (Node tree : trees)
+            if (!index.containsKey(tree)) connect(tree);
+    }
+
+    /**
+     * Returns the strongly connected components of the sources, each after the components it depends on.
+     */
+    public List<List<Node>> getComponents() {
+        return components;
+    }
+
+    /**
+     * Returns the sources, each after the sources it depends on unless they depend on each other.
+     */
+    public List<Node> getOrder() {
+        List<Node> order = new ArrayList<>();
+        for (List<Node> component : components)
+            order.addAll(component);
+        return order;
+    }
+
+    // components are completed after every component reachable from them, i.e. in dependency order
+    private void connect(Node tree) {
+        index.put(tree, index.size());
+        lowLink.put(tree, index.get(tree));
+        stack.push(tree);
+        onStack.add(tree);
+
+        for (Node d : dependencies.get(tree)) {
+            if (!index.containsKey(d)) {
+                connect(d);
+                lowLink.put(tree, Math.min(lowLink.get(tree), lowLink.get(d)));
+            } else if (onStack.contains(d)) {
+                lowLink.put(tree, Math.min(lowLink.get(tree), index.get(d)));
+            }
+        }
+
+        if (lowLink.get(tree).equals(index.get(tree))) {
+            Set<Node> members = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            Node n;
+            do {
+                n = stack.pop();
+                onStack.remove(n);
+                members.add(n);
+            } while (n != tree);
+            List<Node> component = new ArrayList<>();
+            for (Node t : trees)
+                if (members.contains(t)) component.add(t);
+            components.add(component);
+        }
+    }
+
+    private static Set<String> declaredTypes(Node tree) {
+        final Set<String> names = new HashSet<>();
+        new Visitor() {
+            public void visitClassDeclaration(GNode n) {
+                names.add(n.getString(1));
+                visit(n);
+            }
+
+            public void visitInterfaceDeclaration(GNode n) {
+                names.add(n.getString(1));
+                visit(n);
+            }
+
+            public void visit(Node n) {
+                for (Object o : n) if (o instanceof Node) dispatch((Node) o);
+            }
+        }.dispatch(tree);
+        return names;
+    }
+
+    // the simple names of the given types the tree names
+    private static Set<String> referencedTypes(Node tree, Set<String> types) {
+        final Set<String> names = new LinkedHashSet<>();
+        final Set<String> qualifiedNames = new HashSet<>();
+        final Set<String> variables = new HashSet<>();
+        new Visitor() {
+            public void visitPackageDeclaration(GNode n) {
+            }
+
+            public void visitImportDeclaration(GNode n) {
+            }
+
+            public void visitQualifiedIdentifier(GNode n) {
+                names.add(n.getString(n.size() - 1));
+                names.add(n.getString(0)); // a member type names its enclosing type first
+                qualifiedNames.add(n.getString(n.size() - 1));
+                qualifiedNames.add(n.getString(0));
+            }
+
+            public void visitPrimaryIdentifier(GNode n) {
+                names.add(n.getString(0)); // the class of a static member, or a variable
+            }
+
+            public void visitDeclarator(GNode n) {
+                variables.add(n.getString(0));
+                visit(n);
+            }
+
+            public void visitFormalParameter(GNode n) {
+                variables.add(n.getString(3));
+                visit(n);
+            }
+
+            public void visit(Node n) {
+                for (Object o : n) if (o instanceof Node) dispatch((Node) o);
+            }
+        }.dispatch(tree);
+        for (Iterator<String> i = names.iterator(); i.hasNext(); ) {
+            String name = i.next();
+            if (!types.contains(name) || (variables.contains(name) && !qualifiedNames.contains(name))) i.remove();
+        }
+        return names;
+    }
+}
@@ -10,11 +10,13 @@ import java.util.Map;
  * This class is for building up a header AST.
  */
 public class HeaderAstBuilder {
+    private ClassHierarchy hierarchy;
     private Map<String, ClassSignature> classTreeMap;
     private List<String> packageInfo;
 
-    public HeaderAstBuilder(Map<String, ClassSignature> map, List<String> lst) {
-        classTreeMap = map;
+    public HeaderAstBuilder(ClassHierarchy hierarchy, List<String> lst) {
+        this.hierarchy = hierarchy;
+        classTreeMap = hierarchy.getClassTree();
         packageInfo = lst;
     }
 
@@ -38,7 +40,7 @@ public class HeaderAstBuilder {
 
         for (String s : classTreeMap.keySet()) {
             String className = classTreeMap.get(s).getClassName();
-            if (className != "Object" && className != "String" && className != "Class") {
+            if (!className.equals("Object") && !className.equals("String") && !className.equals("Class")) {
                 // forward declaration
                 forwardDec = GNode.create("ForwardDeclaration");
                 forwardDec.add("struct");
@@ -65,14 +67,14 @@ public class HeaderAstBuilder {
         for (String s : classTreeMap.keySet()) {
             ClassSignature c = classTreeMap.get(s);
             if (s.compareTo("Object") != 0 && s.compareTo("String") != 0 && s.compareTo("Class") != 0) {
-                DataLayout dl = new DataLayout(c, classTreeMap);
+                DataLayout dl = new DataLayout(c, hierarchy);
                 prevHierarchy.add(dl.makeDataLayout());
             }
         }
 
         // VTables
         VTable vt = new VTable();
-        for (Node n: vt.getVTable(classTreeMap))
+        for (Node n: vt.getVTable(hierarchy))
             prevHierarchy.add(n);
 
         // return full AST
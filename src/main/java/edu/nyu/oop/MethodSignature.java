@@ -13,7 +13,6 @@ public class MethodSignature {
     private String method_name;
     private List<String> parameters;
     private List<Node> parameter_types;
-    private String owner;
     private Node methodDeclaration;
 
     public MethodSignature(List<String> modifier, Node return_type, String method_name,
@@ -51,15 +50,6 @@ public class MethodSignature {
     public List<Node> getParameterTypes(){
         return parameter_types;
     }
-
-    public void setOwner(String owner){
-        this.owner = owner;
-    }
-
-    public String getOwner(){
-        return owner;
-    }
-
 }
 
 
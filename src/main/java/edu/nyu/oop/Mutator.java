@@ -11,7 +11,8 @@ import xtc.type.Type;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * This class mutates the input list of Java ASTs and outputs the C++ AST for output.cpp.
@@ -21,20 +22,25 @@ import java.util.Map;
  * __init methods, with super/this calls translated accordingly to appropriate __init methods,
  * followed by initializations of class fields and class initialization blocks in the order
  * they appear in the class, and finally the body of the constructors.
+ * <p>
+ * Given a class consumer, the mutator streams its output instead: the C++ declarations of each top-level
+ * class are handed to the consumer as soon as the class is mutated, and are left out of the returned AST.
  */
 public class Mutator extends Visitor {
     private GNode prevHierarchy;
     private String currentClassName;
     private String mainMethodClassName;
     private GNode classInitialization;
-    private Map<String, ClassSignature> classTreeMap;
+    private ClassHierarchy hierarchy;
     private List<String> packageInfo;
-    private List<String> conflictMethodNames;
+    private Set<String> conflictMethodNames;
     private ChildToParentMap childParentMap;
+    private Consumer<Node> classConsumer;
+    private boolean inStreamedClass = false;
 
-    public Mutator(Map<String, ClassSignature> classTreeMap,
-                   List<String> packageInfo, List<String> conflictMethodNames) {
-        this.classTreeMap = classTreeMap;
+    public Mutator(ClassHierarchy hierarchy,
+                   List<String> packageInfo, Set<String> conflictMethodNames) {
+        this.hierarchy = hierarchy;
         this.packageInfo = packageInfo;
         this.conflictMethodNames = conflictMethodNames;
     }
@@ -58,6 +64,24 @@ public class Mutator extends Visitor {
         return mutatedCppAst;
     }
 
+    /**
+     * Makes mutate hand the C++ declarations of every top-level class to the given consumer, as a node
+     * holding them in order, instead of adding them to the returned AST. Once consumed, they are released
+     * along with the method bodies of the Java class, so that the C++ of the whole program never exists at once.
+     */
+    public void setClassConsumer(Consumer<Node> classConsumer) {
+        this.classConsumer = classConsumer;
+    }
+
+    public String getMainMethodClassName() {
+        return mainMethodClassName;
+    }
+
+    // for when the class with the main method is not mutated again, see TranslationManifest
+    public void setMainMethodClassName(String className) {
+        mainMethodClassName = className;
+    }
+
     public Node makeMainAst() {
         GNode mainAst = GNode.create("CompilationUnit");
         GNode mainMethod = GNode.create("MainMethodDefinition");
@@ -72,6 +96,25 @@ public class Mutator extends Visitor {
     }
 
     public void visitClassDeclaration(GNode n) {
+        if (classConsumer == null || inStreamedClass) {
+            mutateClassDeclaration(n);
+            return;
+        }
+
+        GNode namespace = prevHierarchy;
+        prevHierarchy = GNode.create("ClassDefinitions");
+        inStreamedClass = true;
+        try {
+            mutateClassDeclaration(n);
+            classConsumer.accept(prevHierarchy);
+        } finally {
+            prevHierarchy = namespace;
+            inStreamedClass = false;
+        }
+        TranslationManifest.removeBodies(n); // the printed declarations share them
+    }
+
+    private void mutateClassDeclaration(GNode n) {
         currentClassName = n.getString(1);
         classInitialization = GNode.create("Block");
 
@@ -79,7 +122,7 @@ public class Mutator extends Visitor {
         prevHierarchy.add(make__classMethod());
         prevHierarchy.add(makeVTableInitialization());
 
-        if (classTreeMap.get(currentClassName).getConstructorList().isEmpty())
+        if (hierarchy.getSignature(currentClassName).getConstructorList().isEmpty())
             makeDefaultInitMethod(); // make init method for generated default constructor
 
         visit(n);
@@ -139,7 +182,7 @@ public class Mutator extends Visitor {
                     if (callExpressionName.equals("super")) {
                         superFlag = true;
                         callExpression.set(2,
-                                "__" + classTreeMap.get(currentClassName).getParentClassName() + "::__init");
+                                "__" + hierarchy.getSignature(currentClassName).getParentClassName() + "::__init");
                         callExpression.set(3, addExplicitThisArgument(callExpression.getNode(3)));
                     } else if (callExpressionName.equals("this")) {
                         thisFlag = true;
@@ -166,7 +209,7 @@ public class Mutator extends Visitor {
             GNode callExpression = GNode.create("CallExpression");
             callExpression.add(null);
             callExpression.add(null);
-            callExpression.add("__" + classTreeMap.get(currentClassName).getParentClassName() + "::__init");
+            callExpression.add("__" + hierarchy.getSignature(currentClassName).getParentClassName() + "::__init");
             callExpression.add(addExplicitThisArgument(GNode.create("FormalParameters")));
             mutatedBlock.add(callExpression);
             mutatedBlock.add(classInitialization);
@@ -360,7 +403,7 @@ public class Mutator extends Visitor {
             className = className + s + ".";
         className += currentClassName;
         classMethod.add(className);
-        classMethod.add(classTreeMap.get(currentClassName).getParentClassName());
+        classMethod.add(hierarchy.getSignature(currentClassName).getParentClassName());
 
         return classMethod;
     }
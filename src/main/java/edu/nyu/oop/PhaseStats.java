@@ -0,0 +1,172 @@
+package edu.nyu.oop;
+
+import xtc.tree.Printer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * This class records the wall time, CPU time, allocated bytes and AST size of each translation phase run by
+ * a Translator. CPU time and allocations are those of the thread running the phase, as reported by the JVM's
+ * ThreadMXBean, plus those of the tasks it had other threads run, see onBehalfOfCurrentThread; they are -1
+ * when the JVM cannot measure them.
+ */
+public class PhaseStats {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // the CPU time and allocations of the tasks other threads ran on behalf of each thread
+    private static final ThreadLocal<Delegated> delegated = ThreadLocal.withInitial(Delegated::new);
+
+    private static class Delegated {
+        private final AtomicLong cpuNanos = new AtomicLong();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+    }
+
+    /**
+     * The counters of the current thread at some point in time.
+     */
+    public static class Sample {
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private Sample(long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * The cost of a single phase.
+     */
+    public static class Record {
+        private final Translator.Phase phase;
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final int astNodes;
+
+        private Record(Translator.Phase phase, long wallNanos, long cpuNanos, long allocatedBytes, int astNodes) {
+            this.phase = phase;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.astNodes = astNodes;
+        }
+
+        public Translator.Phase getPhase() {
+            return phase;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getAstNodes() {
+            return astNodes;
+        }
+    }
+
+    private List<Record> records = new ArrayList<>();
+
+    public static Sample sample() {
+        Delegated d = delegated.get();
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        return new Sample(System.nanoTime(), cpu < 0 ? -1 : cpu + d.cpuNanos.get(),
+                allocated < 0 ? -1 : allocated + d.allocatedBytes.get());
+    }
+
+    /**
+     * Wraps a task the current thread hands to another thread, so that the CPU time and allocations of running
+     * it count as those of the current thread. A phase must wait for the tasks it hands out before it ends.
+     */
+    public static <T> Supplier<T> onBehalfOfCurrentThread(Supplier<T> task) {
+        final Thread owner = Thread.currentThread();
+        final Delegated d = delegated.get();
+        return () -> {
+            if (Thread.currentThread() == owner) return task.get(); // e.g. run while the owner waits for it
+            long cpu = cpuTime();
+            long allocated = allocatedBytes();
+            try {
+                return task.get();
+            } finally {
+                if (cpu >= 0) d.cpuNanos.addAndGet(cpuTime() - cpu);
+                if (allocated >= 0) d.allocatedBytes.addAndGet(allocatedBytes() - allocated);
+            }
+        };
+    }
+
+    /**
+     * Records the cost of a phase that started and ended when the given samples were taken.
+     */
+    public void record(Translator.Phase phase, Sample start, Sample end, int astNodes) {
+        records.add(new Record(phase,
+                end.wallNanos - start.wallNanos,
+                start.cpuNanos < 0 || end.cpuNanos < 0 ? -1 : end.cpuNanos - start.cpuNanos,
+                start.allocatedBytes < 0 || end.allocatedBytes < 0 ? -1 : end.allocatedBytes - start.allocatedBytes,
+                astNodes));
+    }
+
+    public List<Record> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    public void print(Printer printer) {
+        printer.pln(String.format("%-22s %-24s %10s %10s %14s %10s",
+                "phase", "method", "wall ms", "cpu ms", "allocated KB", "AST nodes"));
+        long wall = 0, cpu = 0, allocated = 0;
+        for (Record r : records) {
+            printer.pln(String.format("%-22s %-24s %10.1f %10.1f %14d %10d",
+                    r.phase, r.phase.getMethodName(), r.wallNanos / 1e6, r.cpuNanos / 1e6,
+                    r.allocatedBytes < 0 ? -1 : r.allocatedBytes / 1024, r.astNodes));
+            wall += r.wallNanos;
+            cpu = cpu < 0 || r.cpuNanos < 0 ? -1 : cpu + r.cpuNanos;
+            allocated = allocated < 0 || r.allocatedBytes < 0 ? -1 : allocated + r.allocatedBytes;
+        }
+        printer.pln(String.format("%-22s %-24s %10.1f %10.1f %14d", "total", "", wall / 1e6, cpu / 1e6,
+                allocated < 0 ? -1 : allocated / 1024)).flush();
+    }
+
+    public void writeJson(Writer w, String source) throws IOException {
+        w.write("{\n  \"source\": \"" + source.replace("\\", "\\\\").replace("\"", "\\\"") + "\",\n");
+        w.write("  \"phases\": [");
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            w.write(i == 0 ? "\n" : ",\n");
+            w.write("    {\"phase\": \"" + r.phase + "\", \"method\": \"" + r.phase.getMethodName() + "\", "
+                    + "\"wallNanos\": " + r.wallNanos + ", \"cpuNanos\": " + r.cpuNanos + ", "
+                    + "\"allocatedBytes\": " + r.allocatedBytes + ", \"astNodes\": " + r.astNodes + "}");
+        }
+        w.write("\n  ]\n}\n");
+        w.flush();
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+        if (!t.isThreadAllocatedMemorySupported()) return -1;
+        if (!t.isThreadAllocatedMemoryEnabled()) t.setThreadAllocatedMemoryEnabled(true);
+        return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
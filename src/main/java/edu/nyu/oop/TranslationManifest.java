@@ -0,0 +1,256 @@
+package edu.nyu.oop;
+
+import edu.nyu.oop.util.AtomicFileWriter;
+import edu.nyu.oop.util.NodeUtil;
+import org.slf4j.Logger;
+
+import xtc.lang.JavaAstSimplifier;
+import xtc.tree.GNode;
+import xtc.tree.Location;
+import xtc.tree.Node;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * This class keeps what an incremental translation needs to know about the previous one into the same
+ * output location: the content hash of every source of the import closure, a digest of the ClassSignature
+ * of every class, and the fragment of output.cpp produced from each source. It is stored next to the output
+ * files, in a properties file named .translation-manifest.
+ * <p>
+ * A source is translated again when its content changed, or when it refers to a class whose signature
+ * changed or disappeared, either directly or through the signatures of the classes it refers to. The other
+ * sources reuse their fragment, and only their declarations are analyzed, so that the names the sources
+ * translated again use can still be resolved. Since the package and the methods renamed for conflicting
+ * with a field affect the translation of every source, any change to them translates every source again.
+ * <p>
+ * The unit of reuse is a source rather than a single class, as the mutators work on whole compilation units.
+ */
+public class TranslationManifest {
+    private Logger logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+
+    public static final String FILE_NAME = ".translation-manifest";
+
+    // bump whenever a change to the translator changes its output
+    private static final String VERSION = "2";
+
+    private File file;
+    private Properties previous = new Properties();
+    private Properties current = new Properties();
+    private Map<Node, String> sources = new IdentityHashMap<>();
+
+    public TranslationManifest(String outputLocation) {
+        file = new File(outputLocation, FILE_NAME);
+        if (file.isFile()) {
+            try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                previous.load(r);
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable translation manifest " + file, e);
+                previous.clear();
+            }
+            if (!VERSION.equals(previous.getProperty("version")))
+                previous.clear();
+        }
+    }
+
+    /**
+     * Records the sources and class signatures of the given ASTs, and finds those whose previous translation
+     * is still valid. Must be called on the ASTs as parsed, before any phase rewrote them.
+     *
+     * @param javaAstList the primary source and its imports
+     * @return the ASTs of the sources that can reuse their fragment, compared by identity
+     */
+    public Set<Node> findReusable(List<Node> javaAstList) {
+        current = new Properties();
+        current.setProperty("version", VERSION);
+        sources.clear();
+
+        // the signatures are built from copies, since building them renames methods in place
+        List<Node> copies = new ArrayList<>();
+        for (Node tree : javaAstList) {
+            GNode copy = NodeUtil.deepCopyNode((GNode) tree);
+            new JavaAstSimplifier().dispatch(copy);
+            copies.add(copy);
+        }
+        ClassTreeVisitor classTreeVisitor = new ClassTreeVisitor();
+        Map<String, ClassSignature> classTree = classTreeVisitor.getClassTree(copies);
+        current.setProperty("global", digest(classTreeVisitor.getPackageInfo() + " "
+                + classTreeVisitor.getConflictMethodNames()));
+
+        Set<String> changedClasses = new HashSet<>();
+        Map<String, Set<String>> signatureReferences = new HashMap<>();
+        for (ClassSignature c : classTree.values()) {
+            String name = c.getClassName();
+            if (ClassSignature.javaLangClasses().containsKey(name)) continue;
+            Set<String> references = new HashSet<>();
+            current.setProperty("class." + name, digest(describe(c, references)));
+            signatureReferences.put(name, references);
+            if (!current.getProperty("class." + name).equals(previous.getProperty("class." + name)))
+                changedClasses.add(name);
+        }
+        for (String key : previous.stringPropertyNames()) {
+            if (key.startsWith("class.") && !current.containsKey(key))
+                changedClasses.add(key.substring("class.".length()));
+        }
+
+        boolean sameGlobal = current.getProperty("global").equals(previous.getProperty("global"));
+        Set<Node> reusable = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        for (Node tree : javaAstList) {
+            String source = sourceOf(tree);
+            if (source == null) continue;
+            sources.put(tree, source);
+            current.setProperty("source." + source, hash(new File(source)));
+            if (sameGlobal
+                    && current.getProperty("source." + source).equals(previous.getProperty("source." + source))
+                    && previous.getProperty("fragment." + source) != null
+                    && Collections.disjoint(dependencies(tree, signatureReferences, changedClasses), changedClasses))
+                reusable.add(tree);
+        }
+        logger.debug("Reusing the translation of " + reusable.size() + " of " + javaAstList.size() + " sources");
+        return reusable;
+    }
+
+    /**
+     * Returns the fragment of output.cpp produced from the given source by the previous translation.
+     */
+    public String getFragment(Node tree) {
+        String source = sources.get(tree);
+        return source == null ? null : previous.getProperty("fragment." + source);
+    }
+
+    public void putFragment(Node tree, String fragment) {
+        String source = sources.get(tree);
+        if (source != null) current.setProperty("fragment." + source, fragment);
+    }
+
+    /**
+     * Returns the class whose main method main.cpp called after the previous translation.
+     */
+    public String getMainMethodClassName() {
+        return previous.getProperty("main");
+    }
+
+    public void setMainMethodClassName(String className) {
+        if (className != null) current.setProperty("main", className);
+    }
+
+    /**
+     * Replaces the stored manifest with the one describing the current translation.
+     */
+    public void save() {
+        // through a temporary file unique to the write, since several translations may save the same manifest
+        try (Writer w = new AtomicFileWriter(file, StandardCharsets.UTF_8)) {
+            current.store(w, "Java2CppTranslator incremental translation manifest");
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Unable to write translation manifest " + file, e);
+        }
+        previous = current;
+    }
+
+    /**
+     * Empties the bodies of the methods, constructors and initializer blocks of the given AST, keeping the
+     * declarations the symbol table needs for resolving names used by other sources.
+     */
+    public static void removeBodies(Node n) {
+        if (n.hasName("MethodDeclaration") && n.get(7) != null) {
+            n.set(7, GNode.create("Block"));
+        } else if (n.hasName("ConstructorDeclaration")) {
+            n.set(5, GNode.create("Block"));
+        } else if (n.hasName("BlockDeclaration")) {
+            n.set(1, GNode.create("Block"));
+        } else {
+            for (Object o : n) {
+                if (o instanceof Node) removeBodies((Node) o);
+            }
+        }
+    }
+
+    // the classes a source refers to, directly or through the signatures of the classes it refers to
+    private static Set<String> dependencies(Node tree, Map<String, Set<String>> signatureReferences,
+                                            Set<String> changedClasses) {
+        Set<String> names = new HashSet<>();
+        collectStrings(tree, names);
+        Set<String> result = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(names);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (!signatureReferences.containsKey(name) && !changedClasses.contains(name)) continue;
+            if (!result.add(name)) continue;
+            if (signatureReferences.containsKey(name))
+                pending.addAll(signatureReferences.get(name));
+        }
+        return result;
+    }
+
+    // describes everything of a class signature the translation of other classes depends on
+    private static String describe(ClassSignature c, Set<String> references) {
+        StringBuilder b = new StringBuilder();
+        b.append("class ").append(c.getClassName()).append(" extends ").append(c.getParentClassName()).append('\n');
+        references.add(c.getParentClassName());
+        for (FieldSignature f : c.getFieldList()) {
+            b.append("field ").append(f.getModifier()).append(' ').append(f.getType()).append(' ')
+                    .append(f.getDeclarators()).append('\n');
+            collectStrings(f.getType(), references);
+        }
+        for (MethodSignature m : c.getMethodList()) {
+            b.append("method ").append(m.getModifier()).append(' ').append(m.getReturnType()).append(' ')
+                    .append(m.getMethodName()).append(' ').append(m.getParameters()).append(' ')
+                    .append(m.getParameterTypes()).append('\n');
+            collectStrings(m.getReturnType(), references);
+            for (Node t : m.getParameterTypes())
+                collectStrings(t, references);
+        }
+        for (ConstructorSignature k : c.getConstructorList()) {
+            b.append("constructor ").append(k.getName()).append(' ').append(k.getParameters()).append(' ')
+                    .append(k.getParameterTypes()).append('\n');
+            for (Node t : k.getParameterTypes())
+                collectStrings(t, references);
+        }
+        return b.toString();
+    }
+
+    private static void collectStrings(Node n, Set<String> strings) {
+        if (n == null) return;
+        for (Object o : n) {
+            if (o instanceof String) strings.add((String) o);
+            else if (o instanceof Node) collectStrings((Node) o, strings);
+        }
+    }
+
+    private static String sourceOf(Node tree) {
+        Location location = tree.getLocation();
+        if (location == null) return null;
+        try {
+            return new File(location.file).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(location.file).getAbsolutePath();
+        }
+    }
+
+    private static String hash(File source) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(source.toPath())));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return ""; // never matches a recorded hash, so the source is translated again
+        }
+    }
+
+    private static String digest(String s) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder b = new StringBuilder();
+        for (byte x : bytes)
+            b.append(String.format("%02x", x));
+        return b.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package edu.nyu.oop;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class keeps one JVM alive to serve translation requests, so that editor and build integrations do
+ * not pay for JVM startup, class loading and JIT warm-up on every translation. Requests are read one per
+ * line, from stdin or from connections to a local socket, and each gets a one line answer once it is done:
+ * <pre>
+ *   translate &lt;source&gt; [&lt;output directory&gt;]  answered by  ok &lt;source&gt; &lt;millis&gt; &lt;output directory&gt;
+ *                                                 or  error &lt;source&gt; &lt;message&gt;
+ *                                                 or  busy &lt;source&gt;
+ *   shutdown                                      answered by  bye
+ * </pre>
+ * Answers come in completion order. The output directory defaults to a directory named after the source
+ * under the output root. Translations run on a BatchTranslator worker pool whose workers keep their warm
+ * code, parse cache and java.lang class signatures across requests. At most as many requests as there are
+ * workers plus the queue capacity are in flight; further ones are answered with busy right away.
+ * <p>
+ * A shutdown request, or the end of stdin, stops accepting requests, lets the in-flight ones finish and
+ * stops the workers.
+ */
+public class TranslationServer {
+    private Logger logger = org.slf4j.LoggerFactory.getLogger(this.getClass());
+
+    private BatchTranslator translator;
+    private String outputRoot;
+    private Semaphore slots;
+    private volatile boolean stopping = false;
+    private ServerSocket serverSocket;
+    private Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    public TranslationServer(List<File> inputDirectories, String outputRoot, int workers, int queueCapacity) {
+        this.translator = new BatchTranslator(inputDirectories, outputRoot, workers);
+        this.translator.setWatchSources(true); // sources may come and go between requests
+        this.outputRoot = outputRoot;
+        this.slots = new Semaphore(workers + queueCapacity);
+    }
+
+    /**
+     * Makes the workers cache the sources they parse on disk, see AstDiskCache. Must be called before
+     * serving.
+     */
+    public void setAstCache(boolean astCache) {
+        translator.setAstCache(astCache);
+    }
+
+    /**
+     * Serves the requests read from the given stream until it ends or a shutdown is requested, then
+     * stops the server.
+     */
+    public void serve(InputStream in, OutputStream out) {
+        session(in, out);
+        stop();
+        translator.shutdown();
+    }
+
+    /**
+     * Accepts connections on the given port of the loopback interface until a shutdown is requested,
+     * serving the requests of each connection on a thread of its own, then stops the server.
+     */
+    public void listen(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        logger.info("Translation server listening on port " + serverSocket.getLocalPort());
+        ExecutorService sessions = Executors.newCachedThreadPool();
+        try {
+            while (!stopping) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (stopping) break; // the socket was closed by a shutdown request
+                    throw e;
+                }
+                connections.add(socket);
+                sessions.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            session(socket.getInputStream(), socket.getOutputStream());
+                        } catch (IOException e) {
+                            logger.warn("Connection failed", e);
+                        } finally {
+                            connections.remove(socket);
+                            closeQuietly(socket);
+                        }
+                    }
+                });
+            }
+        } finally {
+            stop();
+            sessions.shutdown();
+            try {
+                sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            translator.shutdown();
+        }
+    }
+
+    // Serves one stream of requests, returning once its in-flight requests have been answered.
+    private void session(InputStream in, OutputStream out) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), true);
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        try {
+            String line;
+            while (!stopping && (line = reader.readLine()) != null) {
+                String[] request = line.trim().split("\\s+");
+                if (request[0].isEmpty()) continue;
+                if ("shutdown".equals(request[0])) {
+                    stop();
+                    break;
+                } else if ("translate".equals(request[0]) && (request.length == 2 || request.length == 3)) {
+                    CompletableFuture<?> f = translate(request, writer);
+                    if (f != null) inFlight.add(f);
+                } else {
+                    respond(writer, "error " + line.trim() + " unknown request");
+                }
+            }
+        } catch (IOException e) {
+            if (!stopping) logger.warn("Unable to read request", e);
+        }
+
+        for (CompletableFuture<?> f : inFlight)
+            f.join();
+        if (stopping) respond(writer, "bye");
+    }
+
+    private CompletableFuture<?> translate(String[] request, final PrintWriter writer) {
+        final String name = request[1];
+        File source = new File(name);
+        if (!source.isAbsolute()) source = new File(System.getProperty("user.dir"), name);
+        if (!source.isFile()) {
+            respond(writer, "error " + name + " no such file");
+            return null;
+        }
+
+        File outputDirectory;
+        if (request.length == 3) {
+            outputDirectory = new File(request[2]);
+        } else {
+            String base = source.getName();
+            if (base.endsWith(".java")) base = base.substring(0, base.length() - ".java".length());
+            outputDirectory = new File(outputRoot, base);
+        }
+
+        if (!slots.tryAcquire()) {
+            respond(writer, "busy " + name);
+            return null;
+        }
+        return translator.translate(source, outputDirectory).whenComplete((r, e) -> {
+            slots.release();
+            if (e != null)
+                respond(writer, "error " + name + " " + e);
+            else if (r.succeeded())
+                respond(writer, "ok " + name + " " + r.getElapsedMillis() + " " + r.getOutputDirectory().getPath());
+            else
+                respond(writer, "error " + name + " " + String.valueOf(r.getFailure()).replace('\n', ' '));
+        });
+    }
+
+    // Stops accepting requests, unblocking the sessions that wait for one.
+    private void stop() {
+        stopping = true;
+        if (serverSocket != null) closeQuietly(serverSocket);
+        for (Socket s : connections) {
+            try {
+                s.shutdownInput();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private static void respond(PrintWriter writer, String answer) {
+        synchronized (writer) {
+            writer.println(answer);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
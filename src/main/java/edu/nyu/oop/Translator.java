@@ -5,6 +5,9 @@ import edu.nyu.oop.util.*;
 import xtc.tree.Node;
 import xtc.tree.GNode;
 
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import xtc.util.Runtime;
@@ -17,120 +20,374 @@ import xtc.util.SymbolTable;
  * This class, on the other hand, provides an interface for interaction between Boot.java and the remaining
  * part of the translator. It defines the set of valid methods provided by the translator, and calls them
  * accordingly to fulfill requests made by Boot.java. The delegation pattern is implemented here.
+ * <p>
+ * The phases form a dependency graph and each of them runs at most once per Translator: asking for an
+ * artifact runs the missing prerequisite phases and reuses the ones already completed. Since the mutating
+ * phases rewrite the Java ASTs in place, a phase result stays valid until the phase itself or one of its
+ * prerequisites is invalidated, which also discards every phase depending on it.
+ * <p>
+ * An incremental translator only analyzes and mutates again the sources that changed since the previous
+ * incremental translation into the same output location, or that depend on a class whose signature changed,
+ * and reuses the C++ printed from the other ones, see TranslationManifest. The bodies of the sources it
+ * reuses are removed from their Java ASTs, and their part of the mutated C++ AST is the C++ printed before.
+ * <p>
+ * A streaming translator prints the C++ of each class to output.cpp as soon as the Mutator produces it and
+ * releases it, instead of building the C++ AST of the whole program before printing it, so that output.cpp is
+ * written while making the mutated C++ AST, which only holds the namespaces of the package. Neither the C++
+ * AST nor the text of output.cpp are ever held as a whole, see ComparingFileWriter.
  */
 public class Translator {
+    /**
+     * The translation phases, declared in an order compatible with their prerequisites.
+     */
+    public enum Phase {
+        JAVA_AST_LIST("makeJavaAstList"),
+        MUTATED_JAVA_AST_LIST("mutateJavaAstList", JAVA_AST_LIST),
+        HEADER_AST("makeHeaderAst", MUTATED_JAVA_AST_LIST),
+        HEADER_FILE("makeHeaderFile", HEADER_AST),
+        MUTATED_CPP_AST("makeMutatedCppAst", HEADER_AST),
+        IMPLEMENTATION_FILES("makeImplementationFiles", MUTATED_CPP_AST);
+
+        private final String methodName;
+        private final List<Phase> prerequisites;
+
+        Phase(String methodName, Phase... prerequisites) {
+            this.methodName = methodName;
+            this.prerequisites = Arrays.asList(prerequisites);
+        }
+
+        // the Translator method implementing the phase
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public List<Phase> getPrerequisites() {
+            return prerequisites;
+        }
+
+        // whether this phase depends on the given one, directly or transitively
+        public boolean dependsOn(Phase other) {
+            for (Phase p : prerequisites)
+                if (p == other || p.dependsOn(other)) return true;
+            return false;
+        }
+    }
+
     private Runtime runtime;
     private Node root;
-    private Map<String, ClassSignature> classTreeMap;
+    private String outputLocation;
+    private EnumSet<Phase> completedPhases = EnumSet.noneOf(Phase.class);
+    private PhaseStats phaseStats;
+    private ClassHierarchy classHierarchy;
     private List<String> packageInfo;
-    private List<String> conflictMethodNames;
+    private Set<String> conflictMethodNames;
     private List<Node> javaAstList;
     private Node headerAst;
     private Node mutatedCppAst;
     private Node mainAst;
+    private TranslationManifest manifest;
+    private Set<Node> reusedTrees = Collections.emptySet();
+    private boolean streaming = false;
+    private boolean lazyImports = false;
+    private SourceDependencyGraph dependencyGraph;
 
     public Translator(Runtime rt, Node n) {
+        this(rt, n, XtcProps.get("output.location"));
+    }
+
+    public Translator(Runtime rt, Node n, String outputLocation) {
         runtime = rt;
         root = n;
+        this.outputLocation = outputLocation;
     }
 
     private void makeJavaAstList() {
         javaAstList = new ArrayList<>();
         javaAstList.add(root);
-        javaAstList.addAll(new JavaFiveImportParser().parse((GNode) root));
+        JavaFiveImportParser importParser = new JavaFiveImportParser();
+        importParser.setLazy(lazyImports);
+        javaAstList.addAll(importParser.parse((GNode) root));
+        dependencyGraph = importParser.getDependencyGraph();
     }
 
     private void mutateJavaAstList() {
-        SymbolTable table = new SymbolTable();
-        for (Node n : javaAstList)
+        reusedTrees = manifest == null ? Collections.<Node>emptySet() : manifest.findReusable(javaAstList);
+        List<Node> mutatedTrees = new ArrayList<>();
+        SymbolTable table = new IndexedSymbolTable();
+        // the sources a source refers to must be in the symbol table before it is analyzed
+        for (Node n : new DependencyScheduler(javaAstList).getOrder()) {
+            if (reusedTrees.contains(n))
+                TranslationManifest.removeBodies(n); // only its declarations are needed by the other sources
+            else
+                mutatedTrees.add(n);
             table = new SymbolTableBuilder(runtime, table).getTable(n);
+        }
         ContextualMutator contextualMutator = new ContextualMutator(runtime, table);
-        contextualMutator.mutate(javaAstList);
+        contextualMutator.mutate(mutatedTrees);
     }
 
     private void makeHeaderAst() {
         ClassTreeVisitor classTreeVisitor = new ClassTreeVisitor();
-        classTreeMap = classTreeVisitor.getClassTree(javaAstList);
+        if (dependencyGraph != null)
+            classTreeVisitor.setClassOrder(dependencyGraph.getInheritanceOrder());
+        // indexed once, the class tree no longer changes
+        classHierarchy = new ClassHierarchy(classTreeVisitor.getClassTree(javaAstList));
         packageInfo = classTreeVisitor.getPackageInfo();
         conflictMethodNames = classTreeVisitor.getConflictMethodNames();
-        HeaderAstBuilder headerAstBuilder = new HeaderAstBuilder(classTreeMap, packageInfo);
+        HeaderAstBuilder headerAstBuilder = new HeaderAstBuilder(classHierarchy, packageInfo);
         headerAst = headerAstBuilder.buildHeaderAst();
     }
 
     private void makeHeaderFile() {
-        CppPrinter cppPrinter = new CppPrinter("/output.h");
+        CppPrinter cppPrinter = new CppPrinter(outputLocation, "/output.h");
         cppPrinter.printHeader(headerAst);
     }
 
     private void makeMutatedCppAst() {
-        Mutator mutator = new Mutator(classTreeMap, packageInfo, conflictMethodNames);
-        mutatedCppAst = mutator.mutate(javaAstList);
+        Mutator mutator = new Mutator(classHierarchy, packageInfo, conflictMethodNames);
+        if (manifest == null) {
+            mutatedCppAst = streaming ? mutateStreaming(mutator) : mutator.mutate(javaAstList);
+        } else {
+            mutatedCppAst = mutateIncrementally(mutator);
+            if (mutator.getMainMethodClassName() == null)
+                mutator.setMainMethodClassName(manifest.getMainMethodClassName());
+            manifest.setMainMethodClassName(mutator.getMainMethodClassName());
+        }
         mainAst = mutator.makeMainAst();
     }
 
+    // Mutates the sources that are not reused one at a time, and prints each into the fragment of output.cpp
+    // it produces. The resulting AST holds the fragments of all sources, printed or reused, in source order.
+    private Node mutateIncrementally(Mutator mutator) {
+        GNode compilationUnit = GNode.create("CompilationUnit");
+        GNode prevHierarchy = addNamespaces(compilationUnit);
+        for (Node tree : javaAstList) {
+            String fragment;
+            if (reusedTrees.contains(tree)) {
+                fragment = manifest.getFragment(tree);
+            } else {
+                StringWriter w = new StringWriter();
+                CppPrinter.fragmentPrinter(w).printCppFragment(mutator.mutate(Collections.singletonList(tree)));
+                fragment = w.toString();
+            }
+            manifest.putFragment(tree, fragment);
+            prevHierarchy.add(GNode.create("CppFragment", fragment));
+        }
+        return compilationUnit;
+    }
+
+    // Mutates the sources, printing the C++ of each class to output.cpp as soon as it is produced. The
+    // resulting AST only holds the namespaces the classes were printed in.
+    private Node mutateStreaming(Mutator mutator) {
+        if (!new File(outputLocation).isDirectory())
+            throw new RuntimeException("Output location not found. Create the /output directory.");
+        File file = new File(outputLocation + "/output.cpp");
+        try (ComparingFileWriter w = new ComparingFileWriter(file, StandardCharsets.UTF_8)) {
+            CppPrinter cppOutputPrinter = new CppPrinter(w);
+            cppOutputPrinter.openCpp(packageInfo);
+            mutator.setClassConsumer(cppOutputPrinter::printCppDeclarations);
+            mutator.mutate(javaAstList);
+            cppOutputPrinter.closeCpp();
+            w.commit();
+        }
+        GNode compilationUnit = GNode.create("CompilationUnit");
+        addNamespaces(compilationUnit);
+        return compilationUnit;
+    }
+
+    // adds the namespaces of the package to the given AST, returning the innermost one
+    private GNode addNamespaces(GNode compilationUnit) {
+        GNode prevHierarchy = compilationUnit;
+        for (String s : packageInfo) {
+            GNode namespace = GNode.create("NamespaceDeclaration");
+            namespace.add(s);
+            prevHierarchy.add(namespace);
+            prevHierarchy = namespace;
+        }
+        return prevHierarchy;
+    }
+
+    // whether output.cpp is written while making the mutated C++ AST
+    private boolean isStreamed() {
+        return streaming && manifest == null;
+    }
+
     private void makeImplementationFiles() {
-        CppPrinter cppOutputPrinter = new CppPrinter("/output.cpp");
-        CppPrinter cppMainPrinter = new CppPrinter("/main.cpp");
-        cppOutputPrinter.printCpp(mutatedCppAst);
+        if (!isStreamed()) {
+            CppPrinter cppOutputPrinter = new CppPrinter(outputLocation, "/output.cpp");
+            cppOutputPrinter.printCpp(mutatedCppAst);
+        }
+        CppPrinter cppMainPrinter = new CppPrinter(outputLocation, "/main.cpp");
         cppMainPrinter.printMain(mainAst);
+        if (manifest != null) manifest.save();
+    }
+
+    /**
+     * Makes the translation incremental, see the class comment. Must be called before any phase runs.
+     *
+     * @param incremental whether to reuse the previous incremental translation into the output location
+     */
+    public void setIncremental(boolean incremental) {
+        manifest = incremental ? new TranslationManifest(outputLocation) : null;
+    }
+
+    /**
+     * Makes the translation streaming, see the class comment. Must be called before any phase runs. Since
+     * the method bodies of the Java ASTs are released once printed, the mutated Java ASTs are not usable
+     * after the C++ AST is made, and output.cpp is written by MUTATED_CPP_AST rather than
+     * IMPLEMENTATION_FILES. Has no effect on an incremental translation, which already mutates and prints one
+     * source at a time.
+     *
+     * @param streaming whether to print the C++ of each class as soon as it is produced
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Makes the translation only take the sources declaring the types the primary source refers to,
+     * directly or through them, rather than every source of the packages involved. Must be called before
+     * any phase runs. See JavaFiveImportParser.
+     *
+     * @param lazyImports whether to only parse and translate the sources reachable from the primary source
+     */
+    public void setLazyImports(boolean lazyImports) {
+        this.lazyImports = lazyImports;
+    }
+
+    /**
+     * Makes sure the given phase and all its prerequisites have run, running only the missing ones.
+     *
+     * @param phase the phase whose artifacts are needed
+     */
+    public void require(Phase phase) {
+        if (completedPhases.contains(phase)) return;
+        for (Phase p : phase.getPrerequisites())
+            require(p);
+        if (phaseStats == null) {
+            runPhase(phase);
+        } else {
+            PhaseStats.Sample start = PhaseStats.sample();
+            runPhase(phase);
+            PhaseStats.Sample end = PhaseStats.sample();
+            // counted after the end sample, so that counting is not charged to the phase
+            phaseStats.record(phase, start, end, countAstNodes(phase));
+        }
+        completedPhases.add(phase);
+    }
+
+    /**
+     * Makes the translator measure the phases it runs from now on, see getPhaseStats.
+     *
+     * @param measured whether to record the time, memory and AST size of each phase
+     */
+    public void setMeasured(boolean measured) {
+        if (!measured) phaseStats = null;
+        else if (phaseStats == null) phaseStats = new PhaseStats();
+    }
+
+    /**
+     * Returns the time and memory spent by every phase run so far, in the order they ran, or null if the
+     * phases are not measured.
+     */
+    public PhaseStats getPhaseStats() {
+        return phaseStats;
+    }
+
+    // the size of the AST a phase produced, or printed for the phases writing files
+    private int countAstNodes(Phase phase) {
+        switch (phase) {
+            case JAVA_AST_LIST:
+            case MUTATED_JAVA_AST_LIST:
+                int count = 0;
+                for (Node n : javaAstList)
+                    count += NodeUtil.countNodes(n);
+                return count;
+            case HEADER_AST:
+            case HEADER_FILE:
+                return NodeUtil.countNodes(headerAst);
+            default:
+                return NodeUtil.countNodes(mutatedCppAst) + NodeUtil.countNodes(mainAst);
+        }
+    }
+
+    /**
+     * Discards the artifacts of the given phase and of every phase depending on it, so that they are
+     * recomputed on the next request. Invalidating JAVA_AST_LIST re-parses the imports, but the primary
+     * AST handed to the constructor is reused as is, so callers must pass a fresh root to start over.
+     *
+     * @param phase the first phase to recompute
+     */
+    public void invalidate(Phase phase) {
+        for (Phase p : Phase.values()) {
+            if (p == phase || p.dependsOn(phase))
+                completedPhases.remove(p);
+        }
+    }
+
+    public boolean isCompleted(Phase phase) {
+        return completedPhases.contains(phase);
+    }
+
+    private void runPhase(Phase phase) {
+        switch (phase) {
+            case JAVA_AST_LIST:
+                makeJavaAstList();
+                break;
+            case MUTATED_JAVA_AST_LIST:
+                mutateJavaAstList();
+                break;
+            case HEADER_AST:
+                makeHeaderAst();
+                break;
+            case HEADER_FILE:
+                makeHeaderFile();
+                break;
+            case MUTATED_CPP_AST:
+                makeMutatedCppAst();
+                break;
+            case IMPLEMENTATION_FILES:
+                makeImplementationFiles();
+                break;
+        }
     }
 
     public void run() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
-        makeHeaderFile();
-        makeMutatedCppAst();
-        makeImplementationFiles();
+        require(Phase.HEADER_FILE);
+        require(Phase.IMPLEMENTATION_FILES);
     }
 
     public List<Node> getJavaAstList() {
-        makeJavaAstList();
+        require(Phase.JAVA_AST_LIST);
         return javaAstList;
     }
 
     public List<Node> getMutatedJavaAstList() {
-        makeJavaAstList();
-        mutateJavaAstList();
+        require(Phase.MUTATED_JAVA_AST_LIST);
         return javaAstList;
     }
 
     public Node getHeaderAst() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
+        require(Phase.HEADER_AST);
         return headerAst;
     }
 
     public void printCppHeader() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
-        makeHeaderFile();
+        require(Phase.HEADER_FILE);
     }
 
     public Node getMutatedCppAst() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
-        makeMutatedCppAst();
+        require(Phase.MUTATED_CPP_AST);
         return mutatedCppAst;
     }
 
     public Node getMainAst() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
-        makeMutatedCppAst();
+        require(Phase.MUTATED_CPP_AST);
         return mainAst;
     }
 
     public void printCppImplementation() {
-        makeJavaAstList();
-        mutateJavaAstList();
-        makeHeaderAst();
-        makeMutatedCppAst();
-        makeImplementationFiles();
+        require(Phase.IMPLEMENTATION_FILES);
     }
 
 }
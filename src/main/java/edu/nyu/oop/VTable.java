@@ -8,16 +8,81 @@ import xtc.tree.Visitor;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class generates the virtual class tables for the classes.
+ * <p>
+ * The layout of the table of a class is derived from the layout of its superclass, which is computed once per
+ * class and never changed afterwards: a method overriding a method of a superclass takes over its slot, found
+ * by name, and other methods get new slots at the end.
  */
 public class VTable {
 
-    ArrayList<MethodSignature> methods = new ArrayList<MethodSignature>();
     ArrayList<Node> VTs= new ArrayList<Node>();
 
+    /**
+     * A slot of a table, holding the method that introduced it, whose signature the slot has, and the name of
+     * the class whose implementation the slot points to.
+     */
+    public static class Slot {
+        private final MethodSignature method;
+        private final String owner;
+
+        Slot(MethodSignature method, String owner) {
+            this.method = method;
+            this.owner = owner;
+        }
+
+        public MethodSignature getMethod() {
+            return method;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+    }
+
+    /**
+     * The slots of the table of a class, in order, and their positions by method name.
+     */
+    public static class Layout {
+        private final List<Slot> slots;
+        private final Map<String, Integer> slotsByName;
+
+        private Layout(List<Slot> slots, Map<String, Integer> slotsByName) {
+            this.slots = Collections.unmodifiableList(slots);
+            this.slotsByName = slotsByName;
+        }
+
+        public List<Slot> getSlots() {
+            return slots;
+        }
+
+        // Derives the layout of a class from this layout, that of its superclass.
+        Layout extend(ClassSignature c, VTable vt) {
+            List<Slot> slots = new ArrayList<>(this.slots);
+            Map<String, Integer> slotsByName = new HashMap<>(this.slotsByName);
+            for (MethodSignature m : c.getMethodList()) {
+                if (!vt.checkMethod(m)) continue;
+                Integer i = slotsByName.get(m.getMethodName());
+                if (i != null) {
+                    slots.set(i, new Slot(slots.get(i).getMethod(), c.getClassName()));
+                } else {
+                    slotsByName.put(m.getMethodName(), slots.size());
+                    slots.add(new Slot(m, c.getClassName()));
+                }
+            }
+            return new Layout(slots, slotsByName);
+        }
+    }
+
+    private static final Layout EMPTY = new Layout(new ArrayList<Slot>(), new HashMap<String, Integer>());
+
     public Node create_field_dec(ArrayList<String> modifiers, Node type, String name){
         GNode field = GNode.create("FieldDeclaration");
         GNode modifi_node = GNode.create("Modifiers");
@@ -45,7 +110,7 @@ public class VTable {
         return init;
     }
 
-    public Node create_vt_constructor(ArrayList<MethodSignature> methods, String name){
+    public Node create_vt_constructor(List<Slot> slots, String name){
         GNode constructor = GNode.create("ConstructorDeclaration");
         constructor.add(null);
         constructor.add(null);
@@ -54,8 +119,9 @@ public class VTable {
         GNode init_list = GNode.create("Initializations");
 
         init_list.add(createInit("__is_a", "__"+name+"::__class()"));
-        for (MethodSignature m : methods){
-            if (m.getOwner().compareTo(name)==0) {
+        for (Slot slot : slots){
+            MethodSignature m = slot.getMethod();
+            if (slot.getOwner().compareTo(name)==0) {
                 init_list.add(createInit(m.getMethodName(), "&__"+name+"::"+m.getMethodName()));
             }
             else if (m.getMethodName().compareTo("__delete")!=0){
@@ -65,7 +131,7 @@ public class VTable {
                 for (Node t: m.getParameterTypes()){
                     second += ", " + TypeResolver.typeToString(t);
                 }
-                second += ")) &__" + m.getOwner() + "::" + m.getMethodName();
+                second += ")) &__" + slot.getOwner() + "::" + m.getMethodName();
                 init_list.add(createInit(first, second));
             }
             else {
@@ -78,7 +144,7 @@ public class VTable {
         return  constructor;
     }
 
-    public Node createVTable(ArrayList<MethodSignature> methods, String class_name){
+    public Node createVTable(List<Slot> slots, String class_name){
         GNode Vtable = GNode.create("ClassDeclaration");
         Vtable.add(null);
         Vtable.add("__"+class_name+"_VT");
@@ -87,7 +153,8 @@ public class VTable {
         Vtable.add(null);
         GNode VtableClassBody = GNode.create("ClassBody");
         VtableClassBody.add(create_field_dec(new ArrayList<String>(), TypeResolver.createType("Class", null), "__is_a"));
-        for (MethodSignature m: methods){
+        for (Slot slot : slots){
+            MethodSignature m = slot.getMethod();
             if (m.getMethodName().compareTo("__delete")!=0) {
                 String extended_name;
                 extended_name = "(*" + m.getMethodName() + ")(" + class_name + ", ";
@@ -110,7 +177,7 @@ public class VTable {
             }
         }
 
-        VtableClassBody.add(create_vt_constructor(methods, class_name));
+        VtableClassBody.add(create_vt_constructor(slots, class_name));
         Vtable.add(VtableClassBody);
 
         return  Vtable;
@@ -123,42 +190,36 @@ public class VTable {
         return true;
     }
 
-    public void recursive_method_extract(Map<String, ClassSignature> map, String k){
-        String current_class_name = k;
-        if (current_class_name.compareTo("null") != 0) {
-            ClassSignature current_class = map.get(current_class_name);
-            recursive_method_extract(map, current_class.getParentClassName());
-            //System.out.println("doing " + k + " in recursion");
-            for (MethodSignature m : current_class.getMethodList()) {
-                //System.out.println(k+" "+m.getMethodName());
-                if (checkMethod(m)) {
-                    boolean find = false;
-                    for (MethodSignature existed : methods) {
-                        if (existed.getMethodName().compareTo(m.getMethodName()) == 0) {
-                            find = true;
-                            existed.setOwner(k);
-                        }
-                    }
-                    if (!find) {
-                        m.setOwner(current_class_name);
-                        methods.add(m);
-                    }
-                }
-            }
+    /**
+     * Returns the layout of the table of the given class, computing the layouts of its superclasses first if
+     * they are not in the given layouts yet, and adding them there. ClassHierarchy lays out every class once.
+     * <p>
+     * A superclass that is not in the given map, like Exception, stands for the layout of Object, which every
+     * class extends, and so does a superclass whose own superclasses lead back to the class.
+     */
+    public Layout getLayout(Map<String, ClassSignature> map, String k, Map<String, Layout> layouts) {
+        return getLayout(map, k, layouts, new HashSet<String>());
+    }
+
+    private Layout getLayout(Map<String, ClassSignature> map, String k, Map<String, Layout> layouts,
+                             Set<String> pending) {
+        if (k.compareTo("null") == 0) return EMPTY;
+        Layout layout = layouts.get(k);
+        if (layout == null) {
+            ClassSignature current_class = map.get(k);
+            if (current_class == null || !pending.add(k))
+                return k.compareTo("Object") == 0 ? EMPTY : getLayout(map, "Object", layouts, pending);
+            layout = getLayout(map, current_class.getParentClassName(), layouts, pending).extend(current_class, this);
+            layouts.put(k, layout);
         }
+        return layout;
     }
 
-    public ArrayList<Node> getVTable(Map<String, ClassSignature> map) {
+    public ArrayList<Node> getVTable(ClassHierarchy hierarchy) {
         VTs.clear();
-        for (String k: map.keySet()) {
-            methods.clear();
+        for (String k: hierarchy.getClassTree().keySet()) {
             if (k.compareTo("Object") != 0 && k.compareTo("String") != 0 && k.compareTo("Class") != 0) {
-                /*for (MethodSignature m : map.get(k).getMethodList()) {
-                    System.out.println(k + " " + m.getMethodName());
-                }
-                System.out.println(k+"----------- end");*/
-                recursive_method_extract(map, k);
-                VTs.add(createVTable(methods, k));
+                VTs.add(createVTable(hierarchy.getLayout(k).getSlots(), k));
             }
         }
         return VTs;
@@ -0,0 +1,160 @@
+package edu.nyu.oop.util;
+
+import org.slf4j.Logger;
+import xtc.tree.GNode;
+import xtc.tree.Node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An on-disk cache of parsed Java sources, so that the sources left unchanged between runs of the translator
+ * are not parsed again. It is disabled by default, and lives in the directory given by the ast.cache.location
+ * property once enabled. NodeUtil.parseJavaFile then goes through it, below the in-memory ParseCache.
+ * <p>
+ * The entry of a source is named after the hash of its canonical path. It holds the path, size, modification
+ * time and content hash of the source it was made from, followed by its AST as encoded by AstSerialization,
+ * compressed unless the ast.cache.compress property is false. An entry is used if the source still has the
+ * same path and size, and either the same modification time or the same content.
+ * <p>
+ * Entries are replaced by moving a complete file over them, so that translators running concurrently, in
+ * this process or in others, only ever read complete entries. An entry that cannot be read, e.g. one written
+ * by another version of the format, is parsed again and replaced.
+ */
+public class AstDiskCache {
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(AstDiskCache.class);
+
+  private static final int MAGIC = 0x4a324341;
+  // bump whenever the encoding or the parser changes
+  private static final int VERSION = 1;
+
+  private static volatile File directory;
+  private static final boolean compress = Boolean.parseBoolean(XtcProps.get("ast.cache.compress", "true"));
+
+  /**
+   * Enables the cache in the directory given by the ast.cache.location property.
+   */
+  public static void enable() {
+    enable(new File(XtcProps.get("ast.cache.location", "target/ast-cache")));
+  }
+
+  public static void enable(File dir) {
+    directory = dir;
+  }
+
+  public static void disable() {
+    directory = null;
+  }
+
+  public static boolean isEnabled() {
+    return directory != null;
+  }
+
+  // Returns the AST of the file, from its entry if it is still valid, or parsed and cached otherwise.
+  static Node load(File file) {
+    File dir = directory;
+    if (dir == null) return NodeUtil.parseJavaFileUncached(file);
+
+    String path = canonicalPath(file);
+    File entry = new File(dir, digest(ByteBuffer.wrap(path.getBytes(StandardCharsets.UTF_8))) + ".ast");
+    long size = file.length();
+    long lastModified = file.lastModified();
+    ByteBuffer content = null;
+
+    if (entry.isFile()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+        if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+          boolean compressed = in.readBoolean();
+          if (path.equals(in.readUTF()) && in.readLong() == size) {
+            long entryModified = in.readLong();
+            String entryHash = in.readUTF();
+            if (entryModified != lastModified) content = SourceReader.read(file);
+            if (entryModified == lastModified || entryHash.equals(digest(content))) {
+              DataInput tree = compressed
+                      ? new DataInputStream(new BufferedInputStream(new InflaterInputStream(in))) : in;
+              return AstSerialization.read(tree, file.toString());
+            }
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        logger.debug("Ignoring unreadable AST cache entry " + entry, e);
+      }
+    }
+
+    try {
+      if (content == null) content = SourceReader.read(file);
+    } catch (IOException e) {
+      return NodeUtil.parseJavaFileUncached(file); // reports the file as unreadable
+    }
+    Node n = NodeUtil.parseJavaSource(file, content);
+    store(dir, entry, (GNode) n, file.toString(), path, content.remaining(), lastModified, digest(content));
+    return n;
+  }
+
+  private static void store(File dir, File entry, GNode root, String source, String path, long size,
+                            long lastModified, String hash) {
+    try {
+      Files.createDirectories(dir.toPath());
+      Path tmp = AtomicFileWriter.createTempFile(entry.toPath());
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeBoolean(compress);
+          out.writeUTF(path);
+          out.writeLong(size);
+          out.writeLong(lastModified);
+          out.writeUTF(hash);
+          if (compress) {
+            DeflaterOutputStream z = new DeflaterOutputStream(out);
+            DataOutputStream tree = new DataOutputStream(new BufferedOutputStream(z));
+            AstSerialization.write(root, source, tree);
+            tree.flush();
+            z.finish();
+          } else {
+            AstSerialization.write(root, source, out);
+          }
+        }
+        try {
+          Files.move(tmp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      logger.debug("Unable to cache the AST of " + path, e); // parsed again next time
+    }
+  }
+
+  private static String canonicalPath(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      return file.getAbsolutePath();
+    }
+  }
+
+  private static String digest(ByteBuffer bytes) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(bytes.duplicate());
+      StringBuilder b = new StringBuilder();
+      for (byte x : md.digest())
+        b.append(String.format("%02x", x));
+      return b.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package edu.nyu.oop.util;
+
+import xtc.tree.GNode;
+import xtc.tree.Location;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of the generic node trees the parser produces, keeping node names, strings, null
+ * children, whether a node has a fixed or variable number of children, and source locations. Every string
+ * is written once and referred to by index afterwards. Locations within the source the tree was parsed from
+ * only hold a line and a column, so that a tree read back takes the name the source is read under.
+ * <p>
+ * Trees holding anything else than generic nodes, strings and nulls cannot be encoded.
+ */
+public class AstSerialization {
+  // the kinds of values
+  private static final int NULL = 0;
+  private static final int STRING = 1;
+  private static final int NEW_STRING = 2;
+  private static final int NODE = 3;
+
+  // the flags of a node
+  private static final int VARIABLE = 1;
+  private static final int LOCATED_IN_SOURCE = 2;
+  private static final int LOCATED_ELSEWHERE = 4;
+
+  /**
+   * Writes the given tree.
+   *
+   * @param root   the tree
+   * @param source the name of the source the tree was parsed from, as found in its locations
+   * @param out    where to write it
+   * @throws IllegalArgumentException if the tree holds a value that cannot be encoded
+   */
+  public static void write(GNode root, String source, DataOutput out) throws IOException {
+    new Writer(source, out).writeValue(root);
+  }
+
+  /**
+   * Reads a tree written by write.
+   *
+   * @param in     where to read it from
+   * @param source the name of the source the locations within the source it was parsed from refer to
+   */
+  public static GNode read(DataInput in, String source) throws IOException {
+    Object root = new Reader(source, in).readValue();
+    if (!(root instanceof GNode)) throw new IOException("Not an encoded tree");
+    return (GNode) root;
+  }
+
+  private static class Writer {
+    private final String source;
+    private final DataOutput out;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    Writer(String source, DataOutput out) {
+      this.source = source;
+      this.out = out;
+    }
+
+    void writeValue(Object o) throws IOException {
+      if (o == null) {
+        out.writeByte(NULL);
+      } else if (o instanceof String) {
+        writeString((String) o);
+      } else if (o instanceof GNode) {
+        writeNode((GNode) o);
+      } else {
+        throw new IllegalArgumentException("Unable to encode " + o.getClass().getName());
+      }
+    }
+
+    private void writeNode(GNode n) throws IOException {
+      out.writeByte(NODE);
+      writeString(n.getName());
+      Location location = n.getLocation();
+      int flags = n.hasVariable() ? VARIABLE : 0;
+      if (location != null) flags |= source.equals(location.file) ? LOCATED_IN_SOURCE : LOCATED_ELSEWHERE;
+      out.writeByte(flags);
+      if ((flags & LOCATED_ELSEWHERE) != 0) writeString(location.file);
+      if (location != null) {
+        writeVarInt(out, location.line);
+        writeVarInt(out, location.column);
+      }
+      writeVarInt(out, n.size());
+      for (Object child : n)
+        writeValue(child);
+    }
+
+    private void writeString(String s) throws IOException {
+      Integer index = strings.get(s);
+      if (index != null) {
+        out.writeByte(STRING);
+        writeVarInt(out, index);
+      } else {
+        out.writeByte(NEW_STRING);
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+        strings.put(s, strings.size());
+      }
+    }
+  }
+
+  private static class Reader {
+    private final String source;
+    private final DataInput in;
+    private final List<String> strings = new ArrayList<String>();
+
+    Reader(String source, DataInput in) {
+      this.source = source;
+      this.in = in;
+    }
+
+    Object readValue() throws IOException {
+      int kind = in.readUnsignedByte();
+      switch (kind) {
+        case NULL:
+          return null;
+        case STRING:
+        case NEW_STRING:
+          return readString(kind);
+        case NODE:
+          return readNode();
+        default:
+          throw new IOException("Unknown value kind " + kind);
+      }
+    }
+
+    private GNode readNode() throws IOException {
+      String name = readString(in.readUnsignedByte());
+      int flags = in.readUnsignedByte();
+      Location location = null;
+      if ((flags & (LOCATED_IN_SOURCE | LOCATED_ELSEWHERE)) != 0) {
+        String file = (flags & LOCATED_ELSEWHERE) != 0 ? readString(in.readUnsignedByte()) : source;
+        location = new Location(file, readVarInt(in), readVarInt(in));
+      }
+      int size = readVarInt(in);
+      GNode n = newNode(name, size, (flags & VARIABLE) != 0);
+      if (location != null) n.setLocation(location);
+      for (int i = 0; i < size; i++)
+        n.set(i, readValue());
+      return n;
+    }
+
+    private String readString(int kind) throws IOException {
+      if (kind == STRING) {
+        int index = readVarInt(in);
+        if (index >= strings.size()) throw new IOException("Unknown string " + index);
+        return strings.get(index);
+      }
+      if (kind != NEW_STRING) throw new IOException("Expected a string, found value kind " + kind);
+      byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      String s = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(s);
+      return s;
+    }
+  }
+
+  // Creates a node of the given size, whose children are all null.
+  private static GNode newNode(String name, int size, boolean variable) throws IOException {
+    if (variable) {
+      GNode n = GNode.create(name, size);
+      for (int i = 0; i < size; i++)
+        n.add(null);
+      return n;
+    }
+    Object o = null;
+    switch (size) {
+      case 0: return GNode.create(name, false);
+      case 1: return GNode.create(name, o);
+      case 2: return GNode.create(name, o, o);
+      case 3: return GNode.create(name, o, o, o);
+      case 4: return GNode.create(name, o, o, o, o);
+      case 5: return GNode.create(name, o, o, o, o, o);
+      case 6: return GNode.create(name, o, o, o, o, o, o);
+      case 7: return GNode.create(name, o, o, o, o, o, o, o);
+      case 8: return GNode.create(name, o, o, o, o, o, o, o, o);
+      default: throw new IOException("Fixed size node " + name + " with " + size + " children");
+    }
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+}
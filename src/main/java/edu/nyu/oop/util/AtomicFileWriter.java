@@ -0,0 +1,103 @@
+package edu.nyu.oop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A writer that keeps what is written to it in memory and replaces the file only when it is flushed or
+ * closed, and only if the content differs from what the file already holds. The file is replaced by moving
+ * a temporary file of the same directory, unique to the write, over it, so readers never see it half written,
+ * and an unchanged file keeps its modification time, so that builds depending on it are not triggered for
+ * nothing.
+ * <p>
+ * Failures are reported as UncheckedIOException, since the xtc Printer writing through it would otherwise
+ * swallow them.
+ */
+public class AtomicFileWriter extends Writer {
+  private final File file;
+  private final Charset charset;
+  private final StringBuilder buffer = new StringBuilder();
+  private int committedLength = -1;
+
+  public AtomicFileWriter(File file, Charset charset) {
+    this.file = file;
+    this.charset = charset;
+  }
+
+  public void write(char[] cbuf, int off, int len) {
+    buffer.append(cbuf, off, len);
+  }
+
+  public void write(String str, int off, int len) {
+    buffer.append(str, off, off + len);
+  }
+
+  public void flush() {
+    if (buffer.length() == committedLength) return; // nothing was written since the last commit
+    byte[] content = buffer.toString().getBytes(charset);
+    Path target = file.toPath();
+    try {
+      if (!Files.isRegularFile(target) || !Arrays.equals(content, Files.readAllBytes(target)))
+        replace(target, content);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write " + file, e);
+    }
+    committedLength = buffer.length();
+  }
+
+  public void close() {
+    flush();
+  }
+
+  private static void replace(Path target, byte[] content) throws IOException {
+    // a temporary file of its own, since several translations may replace the same file at once
+    Path tmp = createTempFile(target);
+    try {
+      Files.write(tmp, content);
+      try {
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Creates an empty temporary file next to the given one, to be moved over it. Unlike Files.createTempFile,
+   * which makes it readable by its owner only, it gets the permissions of the file it replaces, or those of
+   * any new file (the umask applies) if there is none yet.
+   */
+  static Path createTempFile(Path target) throws IOException {
+    Path dir = target.toAbsolutePath().getParent();
+    String prefix = target.getFileName().toString() + ".";
+    while (true) {
+      Path tmp = dir.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+      try {
+        Files.createFile(tmp);
+      } catch (FileAlreadyExistsException e) {
+        continue;
+      }
+      try {
+        if (Files.exists(target)) Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+      } catch (UnsupportedOperationException e) {
+        // not a POSIX file system, the new file keeps the default permissions
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(tmp);
+        throw e;
+      }
+      return tmp;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package edu.nyu.oop.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A writer that replaces a file only if the content written to it differs from what the file already holds,
+ * like AtomicFileWriter, but without keeping that content in memory. What is written is compared with the
+ * file as it comes, and is dropped as long as it matches. From the first difference on, it goes to a
+ * temporary file of the same directory, unique to the write, which starts with the part that matched and is
+ * moved over the file on commit.
+ * <p>
+ * The file is only replaced by commit. Closing the writer without committing, e.g. because printing failed
+ * halfway, leaves the file as it was. Failures are reported as UncheckedIOException, since the xtc Printer
+ * writing through it would otherwise swallow them.
+ */
+public class ComparingFileWriter extends Writer {
+  private final Path target;
+  private final Writer encoder;
+  private InputStream existing; // the file compared with, null if there is none or it already differs
+  private long matched = 0;
+  private byte[] compared = new byte[0];
+  private Path tmp;
+  private OutputStream out; // to tmp, once the content differs
+
+  public ComparingFileWriter(File file, Charset charset) {
+    target = file.toPath();
+    try {
+      if (Files.isRegularFile(target)) existing = new BufferedInputStream(Files.newInputStream(target));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read " + file, e);
+    }
+    encoder = new OutputStreamWriter(new OutputStream() {
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+        writeBytes(b, off, len);
+      }
+    }, charset);
+  }
+
+  public void write(char[] cbuf, int off, int len) {
+    try {
+      encoder.write(cbuf, off, len);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write " + target, e);
+    }
+  }
+
+  public void write(String str, int off, int len) {
+    try {
+      encoder.write(str, off, len);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write " + target, e);
+    }
+  }
+
+  public void flush() {
+    try {
+      encoder.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write " + target, e);
+    }
+  }
+
+  private void writeBytes(byte[] b, int off, int len) throws IOException {
+    if (out == null && existing != null) {
+      if (compared.length < len) compared = new byte[len];
+      int n = 0;
+      for (int r; n < len && (r = existing.read(compared, n, len - n)) > 0; )
+        n += r;
+      int i = 0;
+      while (i < n && compared[i] == b[off + i]) i++;
+      matched += i;
+      if (i == len) return;
+      off += i;
+      len -= i;
+    }
+    if (out == null) differ();
+    out.write(b, off, len);
+  }
+
+  // starts the temporary file with the part of the file that matched
+  private void differ() throws IOException {
+    closeExisting();
+    tmp = AtomicFileWriter.createTempFile(target);
+    out = new BufferedOutputStream(Files.newOutputStream(tmp));
+    if (matched == 0) return;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(target))) {
+      byte[] buffer = new byte[8192];
+      for (long left = matched; left > 0; ) {
+        int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+        if (n < 0) throw new IOException(target + " changed while being compared");
+        out.write(buffer, 0, n);
+        left -= n;
+      }
+    }
+  }
+
+  /**
+   * Replaces the file with what was written, unless it holds exactly that already.
+   */
+  public void commit() {
+    try {
+      encoder.flush();
+      if (out == null && existing != null && existing.read() < 0) return; // the same content, left untouched
+      if (out == null) differ(); // shorter than the file, or no file
+      out.close();
+      out = null;
+      try {
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to write " + target, e);
+    }
+  }
+
+  /**
+   * Releases the files, discarding what was written unless it was committed.
+   */
+  public void close() {
+    try {
+      closeExisting();
+      if (out != null) out.close();
+      out = null;
+      if (tmp != null) Files.deleteIfExists(tmp);
+      tmp = null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to clean up after writing " + target, e);
+    }
+  }
+
+  private void closeExisting() throws IOException {
+    if (existing != null) existing.close();
+    existing = null;
+  }
+}
@@ -21,9 +21,12 @@ public class ContextualVisitor extends Visitor {
 
     protected SymbolTable table;
     protected Runtime runtime;
+    private List<File> classpath;
 
+    // looked up once, the input directories do not change while visiting
     public final List<File> classpath() {
-        return JavaEntities.classpath(runtime);
+        if (classpath == null) classpath = JavaEntities.classpath(runtime);
+        return classpath;
     }
 
     public ContextualVisitor(Runtime runtime, SymbolTable table) {
@@ -0,0 +1,109 @@
+package edu.nyu.oop.util;
+
+import xtc.Constants;
+import xtc.tree.Node;
+import xtc.util.SymbolTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A symbol table that remembers the scopes it found by qualified name. xtc's JavaAnalyzer and JavaEntities
+ * look scopes up by qualified name all the time, e.g. for every name they resolve, and SymbolTable splits the
+ * name into its components and walks down from the root on every lookup.
+ * <p>
+ * A remembered scope is only returned while it still has the name it was found under. Merging a scope into
+ * its parent renames the scopes it holds and clears its own name, and deleting a scope, the only other way
+ * to remove one from the table, forgets every scope found so far.
+ * <p>
+ * Marking a node also stores the scope itself on the node, under SCOPE_HANDLE, next to its name. Entering a
+ * marked node then makes that scope the current one directly, as long as the handle was stored by this table
+ * since the last deletion and the scope still has the name the node is marked with. Otherwise the scope is
+ * looked up by name, as SymbolTable does, and the handle stored again.
+ */
+public class IndexedSymbolTable extends SymbolTable {
+  public static final String SCOPE_HANDLE = "edu.nyu.oop.util.IndexedSymbolTable.scope";
+
+  private final Map<String, Scope> scopesByName = new HashMap<String, Scope>();
+  // changes whenever a scope may have been deleted, which invalidates the handles stored so far
+  private int generation = 0;
+
+  private static class Handle {
+    final IndexedSymbolTable table;
+    final int generation;
+    final Scope scope;
+
+    Handle(IndexedSymbolTable table, Scope scope) {
+      this.table = table;
+      this.generation = table.generation;
+      this.scope = scope;
+    }
+  }
+
+  public Scope getScope(String name) {
+    Scope scope = scopesByName.get(name);
+    if (scope != null && name.equals(scope.getQualifiedName())) return scope;
+    scope = super.getScope(name);
+    if (scope != null) scopesByName.put(name, scope);
+    return scope;
+  }
+
+  public void delete(String name) {
+    super.delete(name);
+    scopesByName.clear();
+    generation++;
+  }
+
+  public void reset() {
+    super.reset();
+    scopesByName.clear();
+    generation++;
+  }
+
+  public void mark(Node n) {
+    if (!n.hasProperty(Constants.SCOPE)) {
+      n.setProperty(Constants.SCOPE, current.getQualifiedName());
+      n.setProperty(SCOPE_HANDLE, new Handle(this, current));
+    }
+  }
+
+  public void enter(Node n) {
+    String name = n.getStringProperty(Constants.SCOPE);
+    if (name == null) return;
+    Scope scope = handle(n, name);
+    if (scope == null) {
+      super.enter(n);
+      n.setProperty(SCOPE_HANDLE, new Handle(this, current));
+    } else if (scope.getParent() != current) {
+      throw new IllegalStateException("Scope " + name + " not nested in " + current.getQualifiedName());
+    } else {
+      current = scope;
+    }
+  }
+
+  /**
+   * Makes the scope the given node is marked with the current scope, wherever it is nested, like setScope
+   * does with the scope of that name.
+   *
+   * @throws NullPointerException if the node is not marked or its scope does not exist
+   */
+  public void enterMarked(Node n) {
+    String name = n.getStringProperty(Constants.SCOPE);
+    Scope scope = handle(n, name);
+    if (scope == null) {
+      setScope(getScope(name));
+      n.setProperty(SCOPE_HANDLE, new Handle(this, current));
+    } else {
+      current = scope;
+    }
+  }
+
+  // the scope stored on the node, or null if there is none or it is stale
+  private Scope handle(Node n, String name) {
+    Object o = n.getProperty(SCOPE_HANDLE);
+    if (!(o instanceof Handle)) return null;
+    Handle h = (Handle) o;
+    if (h.table != this || h.generation != generation || !name.equals(h.scope.getQualifiedName())) return null;
+    return h.scope;
+  }
+}
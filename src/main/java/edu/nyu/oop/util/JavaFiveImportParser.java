@@ -1,5 +1,6 @@
 package edu.nyu.oop.util;
 
+import edu.nyu.oop.PhaseStats;
 import org.slf4j.Logger;
 import xtc.parser.ParseException;
 import xtc.tree.Node;
@@ -8,6 +9,10 @@ import xtc.tree.Visitor;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This is a utility class which will load the source files for anything referenced by the primary source.
@@ -16,49 +21,82 @@ import java.util.*;
  * <p>
  * It will look for the files in the locations specified in xtc.properties's input.locations property.
  * If you have two packages named the same thing under more than one input location, it will return
- * which ever one it finds first.
+ * which ever one it finds first. The files are looked up in the SourcePathIndex, which lists the input
+ * locations once rather than for every import.
+ * <p>
+ * Sources are identified by their canonical path: a parser reads and parses each file at most once, however
+ * often it is imported, and returns it at most once. The files a source refers to are parsed concurrently:
+ * all of them at once when the primary source has a location, as the SourceDependencyGraph of the primary
+ * source lists them before they are parsed.
+ * <p>
+ * A lazy parser only loads the sources declaring the types a source refers to, rather than every source of
+ * its package and of the packages it imports on demand, so that it returns the sources reachable from the
+ * primary source. A type is looked for in the source named after it, in its own package, in the package it
+ * is imported from, or in the packages imported on demand. Types that are not found there, and are not part
+ * of java.lang, may be declared in a source named otherwise: the sources of those packages are then parsed
+ * to find out which one declares them, and only that one is returned.
  */
 public class JavaFiveImportParser {
   private static Logger logger = org.slf4j.LoggerFactory.getLogger(JavaFiveImportParser.class);
 
-  private static List<String> inputLocations = loadInputLocations();
-
-  private Set<GNode> sourceTable;  // keep track of the sources parsed or imported by import parser
-  private Set<GNode> primarySourceTable;  // keep track of the sources parsed as a primary source by import parser
+  // the sources found so far by canonical path, so that each file is parsed at most once
+  private Map<String, GNode> sourcesByPath;
+  // the sources whose imports have been followed, compared by identity
+  private Set<GNode> scannedSources;
+  private boolean lazy = false;
+  // with a lazy parser, the sources parsed to look for a type, and the source declaring each type seen so far
+  private Map<String, GNode> candidatesByPath = new HashMap<String, GNode>();
+  private Map<String, String> declaringPaths = new HashMap<String, String>();
+  private SourceDependencyGraph dependencyGraph;
 
   public JavaFiveImportParser() {
-    sourceTable = new HashSet<GNode>();
-    primarySourceTable = new HashSet<GNode>();
+    sourcesByPath = new ConcurrentHashMap<String, GNode>();
+    scannedSources = Collections.newSetFromMap(new IdentityHashMap<GNode, Boolean>());
+  }
+
+  /**
+   * Makes the parser lazy, see the class comment. Must be called before parsing.
+   *
+   * @param lazy whether to only load the sources declaring the types referred to
+   */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * Returns the graph of the sources found by the last parse, or null if the parser is lazy or the primary
+   * source has no location.
+   */
+  public SourceDependencyGraph getDependencyGraph() {
+    return dependencyGraph;
   }
 
   public List<GNode> parse(final GNode primarySrc) {
-    final List<GNode> importedSources = new LinkedList<GNode>();
+    final List<File> importedFiles = new LinkedList<File>();
 
-    sourceTable.add(primarySrc);
-    primarySourceTable.add(primarySrc);
+    scannedSources.add(primarySrc);
+    if (primarySrc.getLocation() != null) {
+      String path = canonicalPath(new File(primarySrc.getLocation().file));
+      sourcesByPath.putIfAbsent(path, primarySrc);
+      if (lazy) addDeclarations(path, primarySrc);
+    }
 
-    new Visitor() {
+    if (lazy) importedFiles.addAll(new ReferencedFiles().find(primarySrc));
+    else new Visitor() {
 
       public void visitPackageDeclaration(GNode node) throws IOException, ParseException {
         String relPath = NodeUtil.mkString(node.getNode(1), File.separator);
-        importedSources.addAll(loadNodesFromDirectory(relPath));
+        importedFiles.addAll(findFilesInDirectory(relPath));
       }
 
       public void visitImportDeclaration(GNode node) {
         if (node.getString(2) == null) {   // There is no '*' character in the import, import single file.
           String relPath = NodeUtil.mkString(node.getNode(1), File.separator) + ".java";
-          GNode n = loadNodeForFile(relPath);
-          if (n != null) {
-            importedSources.add(n);
-            sourceTable.add(n);
-          }
+          File f = findFile(relPath);
+          if (f != null) importedFiles.add(f);
         } else {
           String relPath = NodeUtil.mkString(node.getNode(1), File.separator);
-          List<GNode> sources = loadNodesFromDirectory(relPath);
-          if (sources != null) {
-            importedSources.addAll(sources);
-            sourceTable.addAll(sources);
-          }
+          importedFiles.addAll(findFilesInDirectory(relPath));
         }
       }
 
@@ -66,93 +104,256 @@ public class JavaFiveImportParser {
         for (Object o : n) if (o instanceof Node) dispatch((Node) o);
       }
 
-      private GNode loadNodeForFile(String relPath) {
-        GNode source = null;
-        for (String l : inputLocations) {
-          String absPath = System.getProperty("user.dir") + File.separator + l + File.separator + relPath;
-          File f = loadSourceFile(absPath);
-          if (f != null) {
-            GNode n = (GNode) NodeUtil.parseJavaFile(f);
-            if (!sourceTable.contains(n)) source = n;
-            break;
-          }
-        }
-        if (source == null) {
-          logger.warn("Unable to find any source file for path " + relPath);
-        }
-
-        return source;
+      private File findFile(String relPath) {
+        File f = SourcePathIndex.get().findFile(relPath);
+        if (f == null) logger.warn("Unable to find any source file for path " + relPath);
+        return f;
       }
 
-      private List<GNode> loadNodesFromDirectory(String relPath) {
-        List<GNode> sources = new LinkedList<GNode>();
-        for (String l : inputLocations) {
-          String absPath = System.getProperty("user.dir") + File.separator + l + File.separator + relPath;
-          Set<File> files = loadFilesInDirectory(absPath);
-          if (files != null) {
-            for (File f : files) {
-              GNode n = (GNode) NodeUtil.parseJavaFile(f);
-              if (!sourceTable.contains(n)) sources.add(n);
-            }
-            break; // stop at the first input location containing the package of the primary source
-          }
-        }
-        return sources;
+      private Set<File> findFilesInDirectory(String relPath) {
+        // the first input location containing the package of the primary source
+        Set<File> files = SourcePathIndex.get().findFilesInDirectory(relPath);
+        return files != null ? files : Collections.<File>emptySet();
       }
 
     }.dispatch(primarySrc);
 
+    if (!lazy && primarySrc.getLocation() != null) {
+      // the scanned headers of the sources tell which ones the primary source leads to, so that they are all
+      // parsed at once rather than one level of imports at a time
+      dependencyGraph = new SourceDependencyGraph(new File(primarySrc.getLocation().file), importedFiles);
+      for (String type : dependencyGraph.getMissingTypes())
+        logger.warn("Unable to find any source declaring " + type);
+      return loadNewSources(dependencyGraph.getSources());
+    }
+
+    final List<GNode> importedSources = lazy ? loadReferencedSources(importedFiles) : loadNewSources(importedFiles);
+
     // recursively parse dependencies
     List<GNode> tmpImportedSources = new LinkedList<GNode>(importedSources);
     for (GNode s : tmpImportedSources) {
-      if (!primarySourceTable.contains(s)) // skip if already parsed by import parser
+      if (!scannedSources.contains(s)) // skip if already parsed by import parser
         importedSources.addAll(parse(s));
     }
 
     return importedSources;
   }
 
-  private static Set<File> loadFilesInDirectory(String path) {
-    File[] directory = new File(path).listFiles();
-    if (directory == null) {
-      logger.debug("Did not find a directory at " + path);
-      return null;
+  // Parses the files not found before concurrently, on the common fork-join pool, and returns their ASTs
+  // in the order of the files, as parsing them one after the other would. The cost of parsing them counts as
+  // that of the calling thread in the phase stats.
+  private List<GNode> loadNewSources(List<File> files) {
+    List<GNode> sources = new LinkedList<GNode>();
+    for (Map.Entry<String, CompletableFuture<Node>> e : parseConcurrently(files).entrySet()) {
+      GNode n = join(e.getValue());
+      if (sourcesByPath.putIfAbsent(e.getKey(), n) == null) sources.add(n);
     }
+    return sources;
+  }
 
-    Set<File> files = new HashSet<File>();
-    for (File f : new File(path).listFiles()) {
-      File source = loadSourceFile(f.getAbsolutePath());
-      if (source != null) files.add(source);
+  // Starts parsing the files not found before, by canonical path, in the order of the files.
+  private Map<String, CompletableFuture<Node>> parseConcurrently(List<File> files) {
+    Map<String, CompletableFuture<Node>> parses = new LinkedHashMap<String, CompletableFuture<Node>>();
+    for (final File f : files) {
+      String key = canonicalPath(f);
+      if (sourcesByPath.containsKey(key) || parses.containsKey(key)) continue;
+      parses.put(key, CompletableFuture.supplyAsync(
+          PhaseStats.onBehalfOfCurrentThread(() -> NodeUtil.parseJavaFile(f)), ForkJoinPool.commonPool()));
     }
-    if (files.size() == 0) {
-      logger.warn("Path with no source files. " + path);
-      return null;
+    return parses;
+  }
+
+  private static GNode join(CompletableFuture<Node> parse) {
+    try {
+      return (GNode) parse.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      throw ex;
     }
+  }
 
-    return files;
+  // Returns the sources of the given files not found before, reusing those already parsed as candidates.
+  private List<GNode> loadReferencedSources(List<File> files) {
+    parseCandidates(files);
+
+    List<GNode> sources = new LinkedList<GNode>();
+    for (File f : files) {
+      String key = canonicalPath(f);
+      GNode n = candidatesByPath.get(key);
+      if (n != null && sourcesByPath.putIfAbsent(key, n) == null) sources.add(n);
+    }
+    return sources;
   }
 
-  private static File loadSourceFile(String path) {
-    File f = new File(path);
-    if (f == null) {
-      logger.warn("Invalid path provided for file. " + path);
-      return null;
+  // Parses the given files concurrently, without returning them, and records the types they declare.
+  private void parseCandidates(List<File> files) {
+    List<File> unparsed = new ArrayList<File>();
+    for (File f : files)
+      if (!candidatesByPath.containsKey(canonicalPath(f))) unparsed.add(f);
+    for (Map.Entry<String, CompletableFuture<Node>> e : parseConcurrently(unparsed).entrySet()) {
+      GNode n = join(e.getValue());
+      candidatesByPath.put(e.getKey(), n);
+      addDeclarations(e.getKey(), n);
     }
+  }
+
+  // Records the top level and member types declared by the given source.
+  private void addDeclarations(final String path, GNode source) {
+    new Visitor() {
+      private String prefix = "";
 
-    if (f.isFile() && f.getName().endsWith(".java")) {
-      logger.debug("Loading " + f.getName());
-      return f;
-    } else {
+      public void visitCompilationUnit(GNode n) {
+        if (n.get(0) != null && n.getNode(0).hasName("PackageDeclaration"))
+          prefix = NodeUtil.mkString(n.getNode(0).getNode(1), ".") + ".";
+        visit(n);
+      }
+
+      public void visitClassDeclaration(GNode n) {
+        declare(n.getString(1), n);
+      }
+
+      public void visitInterfaceDeclaration(GNode n) {
+        declare(n.getString(1), n);
+      }
+
+      private void declare(String name, GNode n) {
+        String outer = prefix;
+        if (!declaringPaths.containsKey(prefix + name)) declaringPaths.put(prefix + name, path);
+        prefix = prefix + name + ".";
+        visit(n);
+        prefix = outer;
+      }
+
+      public void visit(Node n) {
+        for (Object o : n) if (o instanceof Node) dispatch((Node) o);
+      }
+    }.dispatch(source);
+  }
+
+  // The files declaring the types a source refers to, found as described in the class comment.
+  private class ReferencedFiles extends Visitor {
+    private String packagePath = null;
+    private String packageName = "";
+    private Map<String, String> singleImports = new HashMap<String, String>();
+    private List<String> onDemandImports = new ArrayList<String>();
+    private Set<String> types = new LinkedHashSet<String>();
+    private Set<String> identifiers = new LinkedHashSet<String>();
+
+    List<File> find(GNode source) {
+      dispatch(source);
+      List<File> files = new ArrayList<File>();
+      for (String name : types) addFile(files, resolve(name, true));
+      for (String name : identifiers) {
+        if (!types.contains(name)) addFile(files, resolve(name, false));
+      }
+      return files;
+    }
+
+    private void addFile(List<File> files, File f) {
+      if (f != null && !files.contains(f)) files.add(f);
+    }
+
+    public void visitPackageDeclaration(GNode n) {
+      packagePath = NodeUtil.mkString(n.getNode(1), File.separator);
+      packageName = NodeUtil.mkString(n.getNode(1), ".") + ".";
+    }
+
+    public void visitImportDeclaration(GNode n) {
+      GNode name = n.getGeneric(1);
+      if (n.getString(2) == null) singleImports.put(name.getString(name.size() - 1), NodeUtil.mkString(name, "."));
+      else onDemandImports.add(NodeUtil.mkString(name, "."));
+    }
+
+    public void visitQualifiedIdentifier(GNode n) {
+      types.add(NodeUtil.mkString(n, "."));
+    }
+
+    // Classes whose static members are used are referred to by primary identifiers. So are variables, which
+    // are only looked for in the sources named after them.
+    public void visitPrimaryIdentifier(GNode n) {
+      identifiers.add(n.getString(0));
+    }
+
+    public void visit(Node n) {
+      for (Object o : n) if (o instanceof Node) dispatch((Node) o);
+    }
+
+    // Returns the file declaring the given type, or null if it is declared by a source already loaded, is
+    // part of java.lang, or is unknown.
+    private File resolve(String name, boolean search) {
+      int dot = name.indexOf('.');
+      if (dot >= 0) {
+        // either a fully qualified name, or a member type of the type its first identifier names
+        File f = resolveQualified(name, search);
+        return f != null ? f : resolve(name.substring(0, dot), search);
+      }
+
+      List<String> packages = new ArrayList<String>();
+      if (singleImports.containsKey(name)) {
+        String imported = singleImports.get(name);
+        File f = resolveQualified(imported, search);
+        if (f != null || declaringPaths.containsKey(imported)) return f;
+      }
+      if (packagePath != null) packages.add(packageName);
+      for (String p : onDemandImports) packages.add(p + ".");
+
+      for (String p : packages) {
+        if (isLoaded(p + name)) return null;
+        File f = SourcePathIndex.get().findFile(p.replace(".", File.separator) + name + ".java");
+        if (f != null) return f;
+      }
+      if (!search || isImplicitlyImported(name)) return null;
+
+      // the type may be declared by a source named otherwise
+      for (String p : packages) {
+        if (declaringPaths.containsKey(p + name)) return declaringFile(p + name);
+        Set<File> files = SourcePathIndex.get().findFilesInDirectory(
+                p.substring(0, p.length() - 1).replace(".", File.separator));
+        if (files == null) continue;
+        parseCandidates(new ArrayList<File>(files));
+        if (declaringPaths.containsKey(p + name)) return declaringFile(p + name);
+      }
+      logger.debug("Unable to find any source declaring " + name);
       return null;
     }
+
+    private File resolveQualified(String name, boolean search) {
+      if (isLoaded(name)) return null;
+      File f = SourcePathIndex.get().findFile(name.replace(".", File.separator) + ".java");
+      if (f != null || !search) return f;
+      int dot = name.lastIndexOf('.');
+      if (dot < 0) return null;
+      Set<File> files = SourcePathIndex.get().findFilesInDirectory(name.substring(0, dot).replace(".", File.separator));
+      if (files != null) parseCandidates(new ArrayList<File>(files));
+      return declaringPaths.containsKey(name) ? declaringFile(name) : null;
+    }
+
+    private boolean isLoaded(String name) {
+      return declaringPaths.containsKey(name) && sourcesByPath.containsKey(declaringPaths.get(name));
+    }
+
+    private File declaringFile(String name) {
+      return sourcesByPath.containsKey(declaringPaths.get(name)) ? null : new File(declaringPaths.get(name));
+    }
+  }
+
+  // whether the simple name denotes a class of java.lang, which every source imports implicitly, like System
+  // or Integer. Unlike the supertypes SourceDependencyGraph checks, any class of java.lang counts here, since
+  // the name resolves to it whether the translator implements it or not, and no source needs to be searched.
+  private static boolean isImplicitlyImported(String name) {
+    try {
+      Class.forName("java.lang." + name, false, JavaFiveImportParser.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
   }
 
-  private static List<String> loadInputLocations() {
-    // Load input locations with correct file separator for system
-    List<String> inputLocations = new LinkedList<String>();
-    for (String l : XtcProps.getList("input.locations")) {
-      inputLocations.add(l.replaceAll("/", File.separator));
+  private static String canonicalPath(File f) {
+    try {
+      return f.getCanonicalPath();
+    } catch (IOException e) {
+      return f.getAbsolutePath();
     }
-    return inputLocations;
   }
-}
\ No newline at end of file
+}
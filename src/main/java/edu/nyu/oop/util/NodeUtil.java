@@ -9,6 +9,8 @@ import xtc.tree.Token;
 import xtc.tree.Visitor;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
@@ -73,12 +75,36 @@ public class NodeUtil {
     return nodes;
   }
 
-  // Parses a Java source file into an XTC AST
+  // Counts the nodes of an AST, the root included
+  public static int countNodes(Node node) {
+    int count = 1;
+    for (Object o : node) {
+      if (o instanceof Node) count += countNodes((Node) o);
+    }
+    return count;
+  }
+
+  // Parses a Java source file into an XTC AST, through the ParseCache and the AstDiskCache when they are enabled
   public static Node parseJavaFile(File file) {
+    if (ParseCache.isEnabled()) return ParseCache.load(file);
+    return AstDiskCache.load(file);
+  }
+
+  static Node parseJavaFileUncached(File file) {
+    ByteBuffer content;
+    try {
+      content = SourceReader.read(file);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to parse Java file " + file.getName(), e);
+    }
+    return parseJavaSource(file, content);
+  }
+
+  // Parses the given content of a Java source file, read beforehand
+  static Node parseJavaSource(File file, ByteBuffer content) {
     try {
-      InputStream instream = new FileInputStream(file);
-      Reader in = new BufferedReader(new InputStreamReader(instream));
-      JavaFiveParser parser = new JavaFiveParser(in, file.toString(), (int) file.length());
+      CharBuffer chars = SourceReader.decode(content);
+      JavaFiveParser parser = new JavaFiveParser(SourceReader.reader(chars), file.toString(), chars.remaining());
       Result result = parser.pCompilationUnit(0);
       return (Node) parser.value(result);
     } catch (Exception e) {
@@ -0,0 +1,80 @@
+package edu.nyu.oop.util;
+
+import org.slf4j.Logger;
+import xtc.tree.GNode;
+import xtc.tree.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An in-memory cache of parsed Java sources, keyed by canonical path and validated against the file's
+ * size and modification time. It is disabled by default; once enabled, NodeUtil.parseJavaFile goes
+ * through it. The translator mutates its ASTs in place, so the cache keeps the pristine AST of every
+ * source and hands out a fresh copy of it on each request.
+ */
+public class ParseCache {
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(ParseCache.class);
+
+  private static volatile boolean enabled = false;
+
+  private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private static class Entry {
+    final long length;
+    final long lastModified;
+    final GNode ast;
+
+    Entry(long length, long lastModified, GNode ast) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.ast = ast;
+    }
+  }
+
+  public static void enable() {
+    enabled = true;
+  }
+
+  public static void disable() {
+    enabled = false;
+    entries.clear();
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  // Returns a private copy of the AST for the file, parsing it only if it is new or has changed on disk.
+  static Node load(File file) {
+    String key;
+    try {
+      key = file.getCanonicalPath();
+    } catch (IOException e) {
+      key = file.getAbsolutePath();
+    }
+
+    long length = file.length();
+    long lastModified = file.lastModified();
+    Entry e = entries.get(key);
+    if (e == null || e.length != length || e.lastModified != lastModified) {
+      logger.debug("Parsing " + key);
+      e = new Entry(length, lastModified, (GNode) AstDiskCache.load(file));
+      entries.put(key, e);
+    }
+    return copy(e.ast);
+  }
+
+  // Copies the generic nodes of the tree, keeping their kind and location. Strings are shared.
+  private static GNode copy(GNode node) {
+    GNode result = GNode.create(node);
+    result.setLocation(node);
+    for (int i = 0; i < result.size(); i++) {
+      Object child = result.get(i);
+      if (child instanceof GNode) result.set(i, copy((GNode) child));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,179 @@
+package edu.nyu.oop.util;
+
+import edu.nyu.oop.ClassSignature;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The import and inheritance graph of the sources a primary source refers to, built from the SourceHeader of
+ * every source rather than from their ASTs, so that it is known before any of them is parsed.
+ * <p>
+ * Like JavaFiveImportParser, a source depends on the sources of its package and the sources it imports, and
+ * the sources are listed in the order the import parser returns them: the dependencies of the primary source
+ * first, followed by the sources each of them leads to, depth first. This lets the import parser parse all
+ * of them at once.
+ * <p>
+ * Classes are named by their simple names, as ClassTreeVisitor does. The supertypes no scanned source
+ * declares, other than those of java.lang, are reported as missing.
+ */
+public class SourceDependencyGraph {
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(SourceDependencyGraph.class);
+
+  private final SourceHeader primary;
+  private final List<File> sources = new ArrayList<File>();
+  private final Map<String, SourceHeader> headersByPath = new HashMap<String, SourceHeader>();
+  private final Map<String, List<File>> dependenciesByPath = new HashMap<String, List<File>>();
+
+  /**
+   * Builds the graph of the given primary source, whose own dependencies are known already.
+   *
+   * @param primary             the primary source
+   * @param primaryDependencies the sources of its package and the sources it imports, in import order
+   */
+  public SourceDependencyGraph(File primary, List<File> primaryDependencies) {
+    this.primary = header(primary);
+    Set<String> known = new HashSet<String>();
+    known.add(canonicalPath(primary));
+    dependenciesByPath.put(canonicalPath(primary), new ArrayList<File>(primaryDependencies));
+    addSources(primaryDependencies, known);
+  }
+
+  // Adds the sources not known yet, then the sources each of them leads to.
+  private void addSources(List<File> files, Set<String> known) {
+    List<File> added = new ArrayList<File>();
+    for (File f : files)
+      if (known.add(canonicalPath(f))) added.add(f);
+    sources.addAll(added);
+    for (File f : added)
+      addSources(dependencies(f), known);
+  }
+
+  // The sources of the package of the given source, followed by the sources it imports.
+  private List<File> dependencies(File source) {
+    SourceHeader h = header(source);
+    List<File> files = new ArrayList<File>();
+    if (h.getPackageName() != null) addFiles(files, h.getPackageName());
+    for (String name : h.getSingleTypeImports()) {
+      File f = SourcePathIndex.get().findFile(name.replace(".", File.separator) + ".java");
+      if (f != null) files.add(f);
+      else logger.warn("Unable to find any source file for path " + name.replace(".", File.separator) + ".java");
+    }
+    for (String name : h.getOnDemandImports())
+      addFiles(files, name);
+    dependenciesByPath.put(canonicalPath(source), files);
+    return files;
+  }
+
+  private static void addFiles(List<File> files, String packageName) {
+    Set<File> found = SourcePathIndex.get().findFilesInDirectory(packageName.replace(".", File.separator));
+    if (found != null) files.addAll(found);
+  }
+
+  private SourceHeader header(File source) {
+    String key = canonicalPath(source);
+    SourceHeader h = headersByPath.get(key);
+    if (h == null) {
+      try {
+        h = SourceHeader.scan(source);
+      } catch (IOException e) {
+        logger.debug("Unable to scan " + source, e); // reported when it is parsed
+        h = SourceHeader.scan(source, "");
+      }
+      headersByPath.put(key, h);
+    }
+    return h;
+  }
+
+  /**
+   * Returns the sources the primary source leads to, not including itself, in import parser order.
+   */
+  public List<File> getSources() {
+    return Collections.unmodifiableList(sources);
+  }
+
+  /**
+   * Returns the sources the given source depends on directly, or null if it is not part of the graph.
+   */
+  public List<File> getDependencies(File source) {
+    List<File> dependencies = dependenciesByPath.get(canonicalPath(source));
+    return dependencies == null ? null : Collections.unmodifiableList(dependencies);
+  }
+
+  public SourceHeader getHeader(File source) {
+    return headersByPath.get(canonicalPath(source));
+  }
+
+  // the headers of the primary source and the sources it leads to, in import parser order
+  private List<SourceHeader> headers() {
+    List<SourceHeader> headers = new ArrayList<SourceHeader>();
+    headers.add(primary);
+    for (File f : sources)
+      headers.add(headersByPath.get(canonicalPath(f)));
+    return headers;
+  }
+
+  /**
+   * Returns the simple names of the classes and interfaces declared by the sources, in declaration order,
+   * except that every type comes after its supertypes.
+   */
+  public List<String> getInheritanceOrder() {
+    Map<String, SourceHeader.Type> types = new LinkedHashMap<String, SourceHeader.Type>();
+    for (SourceHeader h : headers())
+      for (SourceHeader.Type t : h.getTypes())
+        if (!types.containsKey(t.getSimpleName())) types.put(t.getSimpleName(), t);
+
+    Set<String> ordered = new LinkedHashSet<String>();
+    for (String name : types.keySet())
+      addInOrder(name, types, ordered, new HashSet<String>());
+    return new ArrayList<String>(ordered);
+  }
+
+  private void addInOrder(String name, Map<String, SourceHeader.Type> types, Set<String> ordered,
+                          Set<String> visiting) {
+    SourceHeader.Type t = types.get(name);
+    if (t == null || ordered.contains(name) || !visiting.add(name)) return; // unknown, done, or cyclic
+    for (String supertype : t.getSupertypes())
+      addInOrder(simpleName(supertype), types, ordered, visiting);
+    ordered.add(name);
+  }
+
+  /**
+   * Returns the supertypes that no source of the graph declares and that are not among the classes of
+   * java.lang the translator implements, see ClassSignature.javaLangClasses, as written, in declaration order.
+   */
+  public List<String> getMissingTypes() {
+    Set<String> declared = new HashSet<String>();
+    for (SourceHeader h : headers())
+      for (SourceHeader.Type t : h.getTypes())
+        declared.add(t.getSimpleName());
+
+    Set<String> missing = new LinkedHashSet<String>();
+    for (SourceHeader h : headers())
+      for (SourceHeader.Type t : h.getTypes())
+        for (String supertype : t.getSupertypes())
+          if (!declared.contains(simpleName(supertype)) && !isJavaLang(supertype)) missing.add(supertype);
+    return new ArrayList<String>(missing);
+  }
+
+  private static String simpleName(String name) {
+    return name.substring(name.lastIndexOf('.') + 1);
+  }
+
+  // whether the name is one of the classes of java.lang the translator implements, rather than any class of
+  // the java.lang of the JDK running it
+  private static boolean isJavaLang(String name) {
+    String simpleName = name.startsWith("java.lang.") ? name.substring("java.lang.".length()) : name;
+    return ClassSignature.javaLangClasses().containsKey(simpleName);
+  }
+
+  private static String canonicalPath(File f) {
+    try {
+      return f.getCanonicalPath();
+    } catch (IOException e) {
+      return f.getAbsolutePath();
+    }
+  }
+}
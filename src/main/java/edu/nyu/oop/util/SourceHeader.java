@@ -0,0 +1,276 @@
+package edu.nyu.oop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The package, imports and type declarations of a Java source, as read by a scanner that only looks at
+ * tokens, without parsing the source. It skips comments, literals, annotations and type arguments, and
+ * records for every class and interface its name, qualified by the types enclosing it, and the names of the
+ * types it extends and implements as written. Member types are listed before the types enclosing them, in
+ * the order ClassTreeVisitor sees them.
+ * <p>
+ * This is enough to know which sources a source imports, and how its classes inherit from each other, in a
+ * fraction of the time parsing it takes, see SourceDependencyGraph. Sources that do not parse are scanned
+ * as well as the scanner can, and are reported by the parser.
+ */
+public class SourceHeader {
+  /**
+   * A class or interface declared by a source.
+   */
+  public static class Type {
+    private final String name;
+    private final boolean isInterface;
+    private final List<String> supertypes = new ArrayList<String>();
+    private String superclass;
+
+    Type(String name, boolean isInterface) {
+      this.name = name;
+      this.isInterface = isInterface;
+    }
+
+    // the simple name, qualified by the names of the enclosing types
+    public String getName() {
+      return name;
+    }
+
+    public String getSimpleName() {
+      return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    public boolean isInterface() {
+      return isInterface;
+    }
+
+    // the name of the class it extends as written, or null if it does not extend a class
+    public String getSuperclass() {
+      return superclass;
+    }
+
+    // the names of the superclass and the interfaces it extends or implements, as written
+    public List<String> getSupertypes() {
+      return Collections.unmodifiableList(supertypes);
+    }
+  }
+
+  private final File file;
+  private String packageName;
+  private final List<String> singleTypeImports = new ArrayList<String>();
+  private final List<String> onDemandImports = new ArrayList<String>();
+  private final List<Type> types = new ArrayList<Type>();
+
+  private SourceHeader(File file) {
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  // the qualified name of the package, or null for the default package
+  public String getPackageName() {
+    return packageName;
+  }
+
+  public List<String> getSingleTypeImports() {
+    return Collections.unmodifiableList(singleTypeImports);
+  }
+
+  // the packages or types whose member types are imported on demand
+  public List<String> getOnDemandImports() {
+    return Collections.unmodifiableList(onDemandImports);
+  }
+
+  public List<Type> getTypes() {
+    return Collections.unmodifiableList(types);
+  }
+
+  /**
+   * Scans the given source.
+   */
+  public static SourceHeader scan(File file) throws IOException {
+    return scan(file, SourceReader.decode(SourceReader.read(file)));
+  }
+
+  static SourceHeader scan(File file, CharSequence source) {
+    SourceHeader header = new SourceHeader(file);
+    new Scanner(source, header).scan();
+    return header;
+  }
+
+  private static class Scanner {
+    private final CharSequence s;
+    private final SourceHeader header;
+    private int pos = 0;
+    private String token;
+    private String previous;
+    // for each open brace, the type whose body it opens, or null
+    private final List<Type> braces = new ArrayList<Type>();
+
+    Scanner(CharSequence s, SourceHeader header) {
+      this.s = s;
+      this.header = header;
+    }
+
+    void scan() {
+      next();
+      while (token != null) {
+        if (braces.isEmpty() && "package".equals(token)) {
+          next();
+          header.packageName = qualifiedName(false);
+        } else if (braces.isEmpty() && "import".equals(token)) {
+          next();
+          if ("static".equals(token)) next();
+          String name = qualifiedName(true);
+          if (name.endsWith(".*")) header.onDemandImports.add(name.substring(0, name.length() - 2));
+          else if (!name.isEmpty()) header.singleTypeImports.add(name);
+        } else if (("class".equals(token) || "interface".equals(token) || "enum".equals(token))
+                && !".".equals(previous)) {
+          typeDeclaration();
+        } else if ("@".equals(token)) {
+          annotation();
+        } else if ("{".equals(token)) {
+          braces.add(null);
+          next();
+        } else if ("}".equals(token)) {
+          close();
+          next();
+        } else {
+          next();
+        }
+      }
+    }
+
+    private void typeDeclaration() {
+      boolean isInterface = "interface".equals(token);
+      boolean isEnum = "enum".equals(token);
+      next();
+      if (token == null || !Character.isJavaIdentifierStart(token.charAt(0))) return;
+      Type outer = enclosing();
+      Type type = new Type(outer != null ? outer.getName() + "." + token : token, isInterface);
+      next();
+      skipTypeArguments();
+      while (token != null && !"{".equals(token) && !";".equals(token)) {
+        if ("extends".equals(token) || "implements".equals(token)) {
+          boolean superclass = "extends".equals(token) && !isInterface && !isEnum;
+          next();
+          do {
+            if (",".equals(token)) next();
+            String supertype = qualifiedName(false);
+            if (supertype.isEmpty()) break;
+            if (superclass && type.superclass == null) type.superclass = supertype;
+            type.supertypes.add(supertype);
+          } while (",".equals(token));
+        } else {
+          next();
+        }
+      }
+      if ("{".equals(token)) {
+        braces.add(type);
+        next();
+      }
+    }
+
+    // the innermost type whose body is open
+    private Type enclosing() {
+      for (int i = braces.size() - 1; i >= 0; i--)
+        if (braces.get(i) != null) return braces.get(i);
+      return null;
+    }
+
+    private void close() {
+      if (braces.isEmpty()) return;
+      Type t = braces.remove(braces.size() - 1);
+      if (t != null) header.types.add(t); // after its member types, as ClassTreeVisitor records them
+    }
+
+    // Reads a possibly qualified name, and its type arguments, which are dropped.
+    private String qualifiedName(boolean allowStar) {
+      StringBuilder b = new StringBuilder();
+      while (token != null && Character.isJavaIdentifierStart(token.charAt(0))) {
+        b.append(token);
+        next();
+        skipTypeArguments();
+        if (!".".equals(token)) break;
+        next();
+        if (allowStar && "*".equals(token)) {
+          b.append(".*");
+          next();
+          break;
+        }
+        b.append('.');
+      }
+      while ("[".equals(token) || "]".equals(token))
+        next();
+      return b.toString();
+    }
+
+    private void skipTypeArguments() {
+      if (!"<".equals(token)) return;
+      int depth = 0;
+      do {
+        if ("<".equals(token)) depth++;
+        else if (">".equals(token)) depth--;
+        else if ("{".equals(token) || ";".equals(token)) return; // not type arguments after all
+        next();
+      } while (token != null && depth > 0);
+    }
+
+    private void annotation() {
+      next();
+      if ("interface".equals(token)) { // an annotation type, declared like an interface
+        typeDeclaration();
+        return;
+      }
+      qualifiedName(false);
+      if (!"(".equals(token)) return;
+      int depth = 0;
+      do {
+        if ("(".equals(token)) depth++;
+        else if (")".equals(token)) depth--;
+        next();
+      } while (token != null && depth > 0);
+    }
+
+    // Moves to the next token, skipping white space, comments and literals. Operators are read one char
+    // at a time, which is all the scanner needs.
+    private void next() {
+      previous = token;
+      token = null;
+      int n = s.length();
+      while (pos < n) {
+        char c = s.charAt(pos);
+        if (Character.isWhitespace(c)) {
+          pos++;
+        } else if (c == '/' && pos + 1 < n && s.charAt(pos + 1) == '/') {
+          while (pos < n && s.charAt(pos) != '\n') pos++;
+        } else if (c == '/' && pos + 1 < n && s.charAt(pos + 1) == '*') {
+          pos += 2;
+          while (pos < n && !(s.charAt(pos) == '*' && pos + 1 < n && s.charAt(pos + 1) == '/')) pos++;
+          pos += 2;
+        } else if (c == '"' || c == '\'') {
+          pos++;
+          while (pos < n && s.charAt(pos) != c && s.charAt(pos) != '\n') {
+            if (s.charAt(pos) == '\\') pos++;
+            pos++;
+          }
+          pos++;
+          token = String.valueOf(c); // the content of literals does not matter
+          return;
+        } else if (Character.isJavaIdentifierPart(c)) {
+          int start = pos;
+          while (pos < n && Character.isJavaIdentifierPart(s.charAt(pos))) pos++;
+          token = s.subSequence(start, pos).toString();
+          return;
+        } else {
+          pos++;
+          token = String.valueOf(c);
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package edu.nyu.oop.util;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the Java sources under the input locations of xtc.properties, from each directory, relative to
+ * its input location, to the sources it holds. It is built on first use by walking every input location once,
+ * so that resolving imports does not go to the file system. As with listing the directories, when several
+ * input locations hold the same package, the first one wins.
+ * <p>
+ * The index is a snapshot, which is what a single translation needs. Long-running translators call watch,
+ * which keeps it up to date with the sources and directories created and deleted afterwards.
+ */
+public class SourcePathIndex {
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(SourcePathIndex.class);
+
+  private static volatile SourcePathIndex instance;
+
+  // the input locations, in the order they are searched
+  private final List<Path> roots = new ArrayList<Path>();
+  // for each input location, the sources of each directory under it, replaced rather than modified
+  private final List<Map<String, Set<File>>> directories = new ArrayList<Map<String, Set<File>>>();
+
+  private WatchService watchService;
+  private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+
+  public static SourcePathIndex get() {
+    SourcePathIndex index = instance;
+    if (index == null) {
+      synchronized (SourcePathIndex.class) {
+        if (instance == null) instance = new SourcePathIndex(inputLocations());
+        index = instance;
+      }
+    }
+    return index;
+  }
+
+  SourcePathIndex(List<Path> inputLocations) {
+    for (Path root : inputLocations) {
+      roots.add(root);
+      Map<String, Set<File>> index = new ConcurrentHashMap<String, Set<File>>();
+      directories.add(index);
+      scan(root, root, index, false);
+    }
+  }
+
+  private static List<Path> inputLocations() {
+    List<Path> locations = new ArrayList<Path>();
+    for (String l : XtcProps.getList("input.locations"))
+      locations.add(Paths.get(System.getProperty("user.dir"), l.replaceAll("/", File.separator)));
+    return locations;
+  }
+
+  /**
+   * Returns the source file at the given path, relative to an input location, from the first input location
+   * holding it, or null if there is none.
+   */
+  public File findFile(String relPath) {
+    for (int i = 0; i < roots.size(); i++) {
+      Path path = roots.get(i).resolve(relPath);
+      Path parent = roots.get(i).relativize(path).getParent();
+      Set<File> files = directories.get(i).get(parent == null ? "" : parent.toString());
+      File f = path.toFile();
+      if (files != null && files.contains(f)) {
+        logger.debug("Loading " + f.getName());
+        return f;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the source files of the directory at the given path, relative to an input location, from the
+   * first input location holding a directory with sources there, or null if there is none.
+   */
+  public Set<File> findFilesInDirectory(String relPath) {
+    for (int i = 0; i < roots.size(); i++) {
+      Set<File> files = directories.get(i).get(relPath);
+      if (files == null) {
+        logger.debug("Did not find a directory at " + roots.get(i).resolve(relPath));
+      } else if (files.isEmpty()) {
+        logger.warn("Path with no source files. " + roots.get(i).resolve(relPath));
+      } else {
+        return Collections.unmodifiableSet(files);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Keeps the index up to date with the file system from now on, on a daemon thread. Does nothing if the
+   * index is already watched.
+   */
+  public synchronized void watch() {
+    if (watchService != null) return;
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      logger.warn("Unable to watch the input locations, new sources are not found until restarting", e);
+      return;
+    }
+    // registering before scanning again, so that no change made in between is missed
+    for (int i = 0; i < roots.size(); i++)
+      scan(roots.get(i), roots.get(i), directories.get(i), true);
+
+    Thread t = new Thread(new Runnable() {
+      public void run() {
+        processEvents();
+      }
+    }, "source-path-index");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      Path dir = watchedDirectories.get(key);
+      int i = dir == null ? -1 : rootOf(dir);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (i < 0) break;
+        Path root = roots.get(i);
+        Map<String, Set<File>> index = directories.get(i);
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          scan(root, dir, index, true); // events were lost, look at the whole directory again
+          continue;
+        }
+        Path child = dir.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+          if (Files.isDirectory(child)) scan(root, child, index, true);
+          else if (isSource(child)) update(index, key(root, dir), child.toFile(), true);
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+          update(index, key(root, dir), child.toFile(), false);
+          String removed = key(root, child);
+          for (Iterator<String> it = index.keySet().iterator(); it.hasNext(); ) {
+            String k = it.next();
+            if (k.equals(removed) || k.startsWith(removed + File.separator)) it.remove();
+          }
+        }
+      }
+      if (!key.reset()) watchedDirectories.remove(key);
+    }
+  }
+
+  private int rootOf(Path dir) {
+    for (int i = 0; i < roots.size(); i++)
+      if (dir.startsWith(roots.get(i))) return i;
+    return -1;
+  }
+
+  // Indexes the directories under the given one, registering them with the watch service if asked to.
+  private void scan(final Path root, Path start, final Map<String, Set<File>> index, final boolean register) {
+    if (!Files.isDirectory(start)) return;
+    try {
+      Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+              new SimpleFileVisitor<Path>() {
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          Set<File> files = new HashSet<File>();
+          try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path p : entries)
+              if (isSource(p)) files.add(p.toFile());
+          }
+          index.put(key(root, dir), files);
+          if (register) {
+            watchedDirectories.put(dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE), dir);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+          logger.debug("Skipping " + file, e);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      logger.warn("Unable to index " + start, e);
+    }
+  }
+
+  private static void update(Map<String, Set<File>> index, String dir, File source, boolean add) {
+    synchronized (index) {
+      Set<File> files = index.get(dir);
+      if (files == null || files.contains(source) == add) return;
+      files = new HashSet<File>(files);
+      if (add) files.add(source);
+      else files.remove(source);
+      index.put(dir, files);
+    }
+  }
+
+  private static boolean isSource(Path p) {
+    return p.getFileName().toString().endsWith(".java") && Files.isRegularFile(p);
+  }
+
+  private static String key(Path root, Path dir) {
+    return root.relativize(dir).toString();
+  }
+}
@@ -0,0 +1,86 @@
+package edu.nyu.oop.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads Java sources for the parser. A source is read into a byte buffer, memory-mapped if it is large, and
+ * decoded in a single pass into a char buffer of the decoded size, with the charset given by the
+ * source.encoding property (UTF-8 by default). The parser reads the decoded chars through a reader over that
+ * buffer, and is told their exact number, so that it neither copies them again nor grows its own buffer.
+ */
+public class SourceReader {
+  private static final Charset charset = Charset.forName(XtcProps.get("source.encoding", "UTF-8"));
+
+  // smaller files are cheaper to read than to map
+  private static final int MAP_THRESHOLD = 64 * 1024;
+
+  /**
+   * Returns the content of the file, positioned at its start.
+   */
+  public static ByteBuffer read(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) throw new IOException("File too large " + file.getName());
+      if (size >= MAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // until the whole file is read
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  /**
+   * Decodes the given content, leaving the buffer as it is. Malformed input is replaced, as a reader would,
+   * and a byte order mark is dropped.
+   */
+  public static CharBuffer decode(ByteBuffer content) throws CharacterCodingException {
+    CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ByteBuffer in = content.duplicate();
+    CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte()));
+    CoderResult result = decoder.decode(in, out, true);
+    if (result.isUnderflow()) result = decoder.flush(out);
+    if (!result.isUnderflow()) result.throwException();
+    out.flip();
+    if (out.hasRemaining() && out.get(out.position()) == '\uFEFF') out.get();
+    return out;
+  }
+
+  /**
+   * Returns a reader over the remaining chars of the buffer, which it consumes.
+   */
+  public static Reader reader(final CharBuffer chars) {
+    // unlike CharArrayReader, reading a char takes no lock, which matters as the parser reads them one by one
+    return new Reader() {
+      public int read() {
+        return chars.hasRemaining() ? chars.get() : -1;
+      }
+
+      public int read(char[] cbuf, int off, int len) {
+        if (len == 0) return 0;
+        if (!chars.hasRemaining()) return -1;
+        int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+      }
+
+      public void close() {
+      }
+    };
+  }
+}
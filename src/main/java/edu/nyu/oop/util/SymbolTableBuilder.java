@@ -28,11 +28,13 @@ public class SymbolTableBuilder extends ContextualVisitor {
     }
 
     public SymbolTableBuilder(final Runtime runtime) {
-        super(runtime, new SymbolTable());
+        super(runtime, new IndexedSymbolTable());
     }
 
+    // marking again through the table, which stores the scope itself as well if it is an IndexedSymbolTable
     private void forceMark(Node n) {
-        n.setProperty(Constants.SCOPE, table.current().getQualifiedName());
+        n.removeProperty(Constants.SCOPE);
+        table.mark(n);
     }
 
     public void visitClassDeclaration(GNode n) {
@@ -131,6 +133,10 @@ public class SymbolTableBuilder extends ContextualVisitor {
     }
 
     public final Type visitType(final GNode n) {
+        // JavaAnalyzer resolved the type already, from the innermost scope of the declaration
+        final Object analyzed = n.getProperty(Constants.TYPE);
+        if (analyzed instanceof Type && !((Type) analyzed).isError())
+            return (Type) analyzed;
         final boolean composite = n.getGeneric(0).hasName("QualifiedIdentifier");
         final Object dispatched0 = dispatch(n.getNode(0));
         assert dispatched0 != null;
@@ -44,6 +44,8 @@ public class SymbolTableUtil {
             } catch (Exception e) {
                 throw new RuntimeException("Unable to enter scope for node " + n.getName());
             }
+        } else if (table instanceof IndexedSymbolTable) {
+            ((IndexedSymbolTable) table).enterMarked(n);
         } else {
             table.setScope(table.getScope(name));
         }
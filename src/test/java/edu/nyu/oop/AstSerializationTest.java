@@ -0,0 +1,73 @@
+package edu.nyu.oop;
+
+import edu.nyu.oop.util.AstSerialization;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import xtc.tree.GNode;
+import xtc.tree.Location;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class AstSerializationTest {
+
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(AstSerializationTest.class);
+
+  private static final String SOURCE = "src/test/java/edu/nyu/oop/XtcTestUtils.java";
+
+  private static GNode node;
+
+  @BeforeClass
+  public static void beforeClass() {
+    logger.debug("Executing AstSerializationTest");
+    node = (GNode) XtcTestUtils.loadTestFile(SOURCE);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    GNode copy = roundTrip(node, SOURCE, SOURCE);
+    assertEquals("The tree read back holds the same data", node, copy);
+    testSameShape(node, copy);
+  }
+
+  @Test
+  public void testLocationsTakeTheSourceName() throws IOException {
+    GNode copy = roundTrip(node, SOURCE, "renamed.java");
+    assertEquals("renamed.java", copy.getLocation().file);
+    assertEquals(node.getLocation().line, copy.getLocation().line);
+  }
+
+  @Test
+  public void testNullsAndOtherLocations() throws IOException {
+    GNode n = GNode.create("Declarator", "x", null, GNode.create("Dimensions", false));
+    n.setLocation(new Location("Other.java", 3, 7));
+    GNode copy = roundTrip(n, SOURCE, SOURCE);
+    assertEquals(n, copy);
+    assertNull(copy.get(1));
+    assertEquals(new Location("Other.java", 3, 7), copy.getLocation());
+    assertFalse(copy.getNode(2).hasVariable());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedValue() throws IOException {
+    GNode literal = GNode.create("Literal", (Object) 42);
+    AstSerialization.write(literal, SOURCE, new DataOutputStream(new ByteArrayOutputStream()));
+  }
+
+  private static GNode roundTrip(GNode n, String writtenSource, String readSource) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    AstSerialization.write(n, writtenSource, new DataOutputStream(bytes));
+    return AstSerialization.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), readSource);
+  }
+
+  private void testSameShape(GNode a, GNode b) {
+    assertEquals(a.getName(), b.getName());
+    assertEquals("Fixed size nodes stay fixed", a.hasVariable(), b.hasVariable());
+    assertEquals(a.getLocation(), b.getLocation());
+    for (int i = 0; i < a.size(); i++) {
+      if (a.get(i) instanceof GNode) testSameShape(GNode.cast(a.get(i)), GNode.cast(b.get(i)));
+    }
+  }
+}
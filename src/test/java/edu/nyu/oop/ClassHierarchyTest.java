@@ -0,0 +1,118 @@
+package edu.nyu.oop;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import xtc.tree.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClassHierarchyTest {
+
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(ClassHierarchyTest.class);
+
+  private static ClassHierarchy hierarchy;
+
+  @BeforeClass
+  public static void beforeClass() {
+    logger.debug("Executing ClassHierarchyTest");
+    Map<String, ClassSignature> classTree = new LinkedHashMap<>(ClassSignature.javaLangClasses());
+
+    // A { int a; static int s; m(); } B extends A { int b; m(); n(); } C extends B { toString(); } D
+    ClassSignature a = new ClassSignature("A", "Object");
+    a.addField(field("a", false));
+    a.addField(field("s", true));
+    a.addMethod(method("m"));
+    ClassSignature b = new ClassSignature("B", "A");
+    b.addField(field("b", false));
+    b.addMethod(method("m"));
+    b.addMethod(method("n"));
+    ClassSignature c = new ClassSignature("C", "B");
+    c.addMethod(method("toString"));
+    ClassSignature d = new ClassSignature("D", "Object");
+    for (ClassSignature s : Arrays.asList(a, b, c, d))
+      classTree.put(s.getClassName(), s);
+
+    hierarchy = new ClassHierarchy(classTree);
+  }
+
+  private static FieldSignature field(String name, boolean isStatic) {
+    List<String> modifiers = isStatic ? Collections.singletonList("static") : Collections.<String>emptyList();
+    return new FieldSignature(modifiers, TypeResolver.createType("int", null), Collections.singletonList(name));
+  }
+
+  private static MethodSignature method(String name) {
+    return new MethodSignature(new ArrayList<String>(), TypeResolver.createType("void", null), name,
+                               new ArrayList<String>(), new ArrayList<Node>(), null);
+  }
+
+  @Test
+  public void testAncestors() {
+    assertEquals(Arrays.asList("B", "A", "Object"), hierarchy.getAncestors("C"));
+    assertEquals(Arrays.asList("Object"), hierarchy.getAncestors("D"));
+    assertTrue(hierarchy.getAncestors("Object").isEmpty());
+  }
+
+  @Test
+  public void testInheritedFields() {
+    // static fields are not inherited by the instances
+    List<String> names = new ArrayList<>();
+    for (FieldSignature f : hierarchy.getInheritedFields("C"))
+      names.add(f.getDeclarators().get(0));
+    assertEquals(Arrays.asList("a", "b"), names);
+  }
+
+  private static List<String> slots(ClassHierarchy hierarchy, String name) {
+    List<String> slots = new ArrayList<>();
+    for (VTable.Slot slot : hierarchy.getLayout(name).getSlots())
+      slots.add(slot.getMethod().getMethodName() + "@" + slot.getOwner());
+    return slots;
+  }
+
+  @Test
+  public void testLayout() {
+    assertEquals(Arrays.asList("__delete@Object", "hashCode@Object", "equals@Object", "getClass@Object",
+                               "toString@C", "m@B", "n@B"), slots(hierarchy, "C"));
+    assertEquals(Arrays.asList("__delete@Object", "hashCode@Object", "equals@Object", "getClass@Object",
+                               "toString@Object", "m@A"), slots(hierarchy, "A"));
+  }
+
+  @Test
+  public void testSuperclassOutsideTheTree() {
+    Map<String, ClassSignature> classTree = new LinkedHashMap<>(ClassSignature.javaLangClasses());
+    ClassSignature e = new ClassSignature("E", "Exception");
+    e.addMethod(method("m"));
+    classTree.put("E", e);
+    ClassHierarchy h = new ClassHierarchy(classTree);
+
+    assertTrue(h.getAncestors("E").isEmpty());
+    assertEquals(Arrays.asList("__delete@Object", "hashCode@Object", "equals@Object", "getClass@Object",
+                               "toString@Object", "m@E"), slots(h, "E"));
+  }
+
+  @Test
+  public void testCyclicSuperclasses() {
+    // X extends Y { m(); } Y extends X { n(); } Z extends X
+    Map<String, ClassSignature> classTree = new LinkedHashMap<>(ClassSignature.javaLangClasses());
+    ClassSignature x = new ClassSignature("X", "Y");
+    x.addMethod(method("m"));
+    ClassSignature y = new ClassSignature("Y", "X");
+    y.addMethod(method("n"));
+    ClassSignature z = new ClassSignature("Z", "X");
+    for (ClassSignature s : Arrays.asList(x, y, z))
+      classTree.put(s.getClassName(), s);
+    ClassHierarchy h = new ClassHierarchy(classTree);
+
+    assertEquals(Arrays.asList("Y"), h.getAncestors("X"));
+    assertEquals(Arrays.asList("X", "Y"), h.getAncestors("Z"));
+    assertEquals(Arrays.asList("__delete@Object", "hashCode@Object", "equals@Object", "getClass@Object",
+                               "toString@Object", "n@Y", "m@X"), slots(h, "X"));
+  }
+}
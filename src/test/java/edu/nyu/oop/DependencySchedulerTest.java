@@ -0,0 +1,52 @@
+package edu.nyu.oop;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import xtc.lang.JavaEntities;
+import xtc.tree.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DependencySchedulerTest {
+
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(DependencySchedulerTest.class);
+
+  private static Node a, b, c;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    logger.debug("Executing DependencySchedulerTest");
+    // A depends on B and C, C on A
+    a = parse("package p; class A extends B { void m() { C.f(); } }");
+    b = parse("package p; class B { }");
+    c = parse("package p; class C { A a; static void f() { } }");
+  }
+
+  private static Node parse(String source) throws Exception {
+    return JavaEntities.javaStringToAst("CompilationUnit", source, true);
+  }
+
+  @Test
+  public void testDependencyOrder() {
+    DependencyScheduler scheduler = new DependencyScheduler(Arrays.asList(a, b, c));
+    assertEquals(Arrays.asList(b, a, c), scheduler.getOrder());
+  }
+
+  @Test
+  public void testCycleStaysInListOrder() {
+    List<List<Node>> components = new DependencyScheduler(Arrays.asList(c, b, a)).getComponents();
+    assertEquals(Arrays.asList(Collections.singletonList(b), Arrays.asList(c, a)), components);
+  }
+
+  @Test
+  public void testVariablesNameNoType() throws Exception {
+    // the B of B.length() is the parameter, not the class
+    Node d = parse("package p; class D { int m(String B) { return B.length(); } }");
+    assertEquals(Arrays.asList(d, b), new DependencyScheduler(Arrays.asList(d, b)).getOrder());
+  }
+}
@@ -0,0 +1,78 @@
+package edu.nyu.oop;
+
+import edu.nyu.oop.util.SourceDependencyGraph;
+import edu.nyu.oop.util.SourceHeader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SourceHeaderTest {
+
+  private static Logger logger = org.slf4j.LoggerFactory.getLogger(SourceHeaderTest.class);
+
+  private static final File SOURCE = new File("src/test/java/inputs/test/Test.java");
+
+  private static SourceHeader header;
+
+  @BeforeClass
+  public static void beforeClass() throws IOException {
+    logger.debug("Executing SourceHeaderTest");
+    header = SourceHeader.scan(SOURCE);
+  }
+
+  @Test
+  public void testPackageAndImports() {
+    assertEquals("inputs.test", header.getPackageName());
+    assertTrue(header.getSingleTypeImports().isEmpty());
+    assertTrue(header.getOnDemandImports().isEmpty());
+  }
+
+  @Test
+  public void testTypes() {
+    // the word class in comments and strings is not a declaration
+    List<String> names = new ArrayList<String>();
+    for (SourceHeader.Type t : header.getTypes())
+      names.add(t.getName());
+    assertEquals(Arrays.asList("A", "B", "C", "AA", "BB", "AAA", "Test"), names);
+  }
+
+  @Test
+  public void testSupertypes() {
+    SourceHeader.Type c = header.getTypes().get(2);
+    assertEquals("B", c.getSuperclass());
+    assertEquals(Collections.singletonList("B"), c.getSupertypes());
+    assertNull(header.getTypes().get(0).getSuperclass());
+  }
+
+  @Test
+  public void testInheritanceOrder() {
+    SourceDependencyGraph graph = new SourceDependencyGraph(SOURCE, Collections.<File>emptyList());
+    assertTrue(graph.getSources().isEmpty());
+    assertEquals(Arrays.asList("A", "B", "C", "AA", "BB", "AAA", "Test"), graph.getInheritanceOrder());
+    assertTrue(graph.getMissingTypes().isEmpty());
+  }
+
+  @Test
+  public void testMissingTypes() throws IOException {
+    // only the classes of java.lang the translator implements count as declared
+    File source = File.createTempFile("Missing", ".java");
+    try {
+      Files.write(source.toPath(), ("class A extends Object {} class B extends java.lang.String {} "
+                                    + "class C extends Exception {} class D extends A {}").getBytes("UTF-8"));
+      SourceDependencyGraph graph = new SourceDependencyGraph(source, Collections.<File>emptyList());
+      assertEquals(Collections.singletonList("Exception"), graph.getMissingTypes());
+    } finally {
+      source.delete();
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package inputs.multifile;
+
+public class Counter {
+  int total;
+
+  public Counter() {
+    total = 0;
+  }
+
+  public void add(Shape s) {
+    total = total + s.area();
+  }
+
+  public int getTotal() {
+    return total;
+  }
+}
@@ -0,0 +1,18 @@
+package inputs.multifile;
+
+public class Multifile {
+  public static void main(String[] args) {
+    Shape[] shapes = new Shape[4];
+    shapes[0] = new Square(2);
+    shapes[1] = new Rectangle(2, 3);
+    shapes[2] = new Square(5);
+    shapes[3] = new Shape("Point");
+
+    Counter c = new Counter();
+    for (int i = 0; i < shapes.length; i++) {
+      System.out.println(shapes[i].toString());
+      c.add(shapes[i]);
+    }
+    System.out.println(c.getTotal());
+  }
+}
@@ -0,0 +1,16 @@
+package inputs.multifile;
+
+public class Rectangle extends Shape {
+  int width;
+  int height;
+
+  public Rectangle(int width, int height) {
+    super("Rectangle");
+    this.width = width;
+    this.height = height;
+  }
+
+  public int area() {
+    return width * height;
+  }
+}
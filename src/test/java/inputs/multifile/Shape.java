@@ -0,0 +1,17 @@
+package inputs.multifile;
+
+public class Shape {
+  String name;
+
+  public Shape(String name) {
+    this.name = name;
+  }
+
+  public int area() {
+    return 0;
+  }
+
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,14 @@
+package inputs.multifile;
+
+public class Square extends Shape {
+  int side;
+
+  public Square(int side) {
+    super("Square");
+    this.side = side;
+  }
+
+  public int area() {
+    return side * side;
+  }
+}